@@ -0,0 +1,84 @@
+/*******************************************************************************
+ Copyright © 2014 Kent Displays, Inc.
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ******************************************************************************/
+
+package com.improvelectronics.sync.android;
+
+/**
+ * A stroke represented as a chain of cubic Bézier curves with a line width at every control point. Control points are
+ * stored as x, y and width triples in digitizer units; curve i uses control points 3i to 3i + 3, so consecutive curves
+ * share their end points. Created from a {@link SyncStroke} with {@link CurveFitter}.
+ */
+public class BezierStroke {
+
+    /**
+     * Number of floats stored for each control point: x, y and width.
+     */
+    public static final int CONTROL_POINT_SIZE = 3;
+
+    private final long mId;
+    private final float[] mControlPoints;
+    private final int mCurveCount;
+
+    BezierStroke(long id, float[] controlPoints, int curveCount) {
+        mId = id;
+        mControlPoints = controlPoints;
+        mCurveCount = curveCount;
+    }
+
+    /**
+     * Returns the identifier of the stroke the curves were fitted to.
+     *
+     * @return id
+     */
+    public long getId() {
+        return mId;
+    }
+
+    public int getCurveCount() {
+        return mCurveCount;
+    }
+
+    public int getControlPointCount() {
+        return mCurveCount * 3 + 1;
+    }
+
+    public float getX(int index) {
+        return mControlPoints[index * CONTROL_POINT_SIZE];
+    }
+
+    public float getY(int index) {
+        return mControlPoints[index * CONTROL_POINT_SIZE + 1];
+    }
+
+    public float getWidth(int index) {
+        return mControlPoints[index * CONTROL_POINT_SIZE + 2];
+    }
+
+    /**
+     * Returns the backing control point array, which must not be modified.
+     *
+     * @return control points
+     */
+    public float[] getControlPoints() {
+        return mControlPoints;
+    }
+}
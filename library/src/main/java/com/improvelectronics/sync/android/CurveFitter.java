@@ -0,0 +1,379 @@
+/*******************************************************************************
+ Copyright © 2014 Kent Displays, Inc.
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ******************************************************************************/
+
+package com.improvelectronics.sync.android;
+
+import java.util.Arrays;
+
+/**
+ * Fits piecewise cubic Bézier curves to completed strokes with the algorithm from Philip J. Schneider, "An Algorithm for
+ * Automatically Fitting Digitized Curves", Graphics Gems, 1990. Line widths are fitted as a cubic over the same curve
+ * parameter, giving a compact and resolution independent representation of a stroke.
+ */
+public class CurveFitter {
+
+    // Number of Newton-Raphson reparameterizations tried before a curve is split.
+    private static final int MAX_ITERATIONS = 4;
+
+    private final float mMaxError;
+
+    /**
+     * @param maxError largest distance in digitizer units a vertex of the stroke may be from the fitted curves
+     */
+    public CurveFitter(float maxError) {
+        if (maxError <= 0) throw new IllegalArgumentException("max error must be positive");
+        mMaxError = maxError;
+    }
+
+    public float getMaxError() {
+        return mMaxError;
+    }
+
+    /**
+     * Fits curves to the vertices of a stroke.
+     *
+     * @param stroke stroke to fit
+     * @return fitted curves, a single degenerate curve if the stroke is a dot
+     */
+    public BezierStroke fit(SyncStroke stroke) {
+        // Drop consecutive duplicate vertices, they have no tangent.
+        int count = stroke.getVertexCount();
+        float[] points = new float[Math.max(count, 1) * 3];
+        int n = 0;
+        for (int i = 0; i < count; i++) {
+            if (n > 0 && points[(n - 1) * 3] == stroke.getX(i) && points[(n - 1) * 3 + 1] == stroke.getY(i)) continue;
+            points[n * 3] = stroke.getX(i);
+            points[n * 3 + 1] = stroke.getY(i);
+            points[n * 3 + 2] = stroke.getWidth(i);
+            n++;
+        }
+
+        Output output = new Output();
+        if (n < 2) {
+            float x = n == 1 ? points[0] : 0, y = n == 1 ? points[1] : 0, w = n == 1 ? points[2] : 0;
+            output.start(x, y, w);
+            output.add(x, y, w, x, y, w, x, y, w);
+        } else {
+            output.start(points[0], points[1], points[2]);
+            fitCubics(points, n, output);
+        }
+        return new BezierStroke(stroke.getId(), Arrays.copyOf(output.controlPoints, output.size), (output.size / 3 - 1) / 3);
+    }
+
+    private void fitCubics(float[] points, int n, Output output) {
+        float errorSquared = mMaxError * mMaxError;
+
+        // Ranges still to be fitted, the leftmost on top so curves are output in order.
+        int[] ranges = new int[16];
+        float[] tangents = new float[32];
+        int top = 0;
+        ranges[0] = 0;
+        ranges[1] = n - 1;
+        tangent(points, 0, 1, tangents, 0);
+        tangent(points, n - 1, n - 2, tangents, 2);
+        top++;
+
+        float[] bezier = new float[8];
+        while (top > 0) {
+            top--;
+            int first = ranges[top * 2], last = ranges[top * 2 + 1];
+            float t1x = tangents[top * 4], t1y = tangents[top * 4 + 1], t2x = tangents[top * 4 + 2], t2y = tangents[top * 4 + 3];
+
+            int split = fitCubic(points, first, last, t1x, t1y, t2x, t2y, errorSquared, bezier, output);
+            if (split < 0) continue;
+
+            // Split at the point of largest error and fit both halves with a shared tangent.
+            float[] center = new float[2];
+            centerTangent(points, split, center);
+            if ((top + 2) * 4 > tangents.length) {
+                tangents = Arrays.copyOf(tangents, tangents.length * 2);
+                ranges = Arrays.copyOf(ranges, ranges.length * 2);
+            }
+            ranges[top * 2] = split;
+            ranges[top * 2 + 1] = last;
+            tangents[top * 4] = -center[0];
+            tangents[top * 4 + 1] = -center[1];
+            tangents[top * 4 + 2] = t2x;
+            tangents[top * 4 + 3] = t2y;
+            top++;
+            ranges[top * 2] = first;
+            ranges[top * 2 + 1] = split;
+            tangents[top * 4] = t1x;
+            tangents[top * 4 + 1] = t1y;
+            tangents[top * 4 + 2] = center[0];
+            tangents[top * 4 + 3] = center[1];
+            top++;
+        }
+    }
+
+    /**
+     * Fits a single curve to a range of points and outputs it if it is within the error.
+     *
+     * @return index to split the range at, or -1 if the curve was output
+     */
+    private int fitCubic(float[] points, int first, int last, float t1x, float t1y, float t2x, float t2y, float errorSquared,
+                         float[] bezier, Output output) {
+        int n = last - first + 1;
+        if (n == 2) {
+            // Use a heuristic for the length of the tangents.
+            float dist = distance(points, first, last) / 3;
+            bezier[0] = points[first * 3];
+            bezier[1] = points[first * 3 + 1];
+            bezier[2] = bezier[0] + t1x * dist;
+            bezier[3] = bezier[1] + t1y * dist;
+            bezier[6] = points[last * 3];
+            bezier[7] = points[last * 3 + 1];
+            bezier[4] = bezier[6] + t2x * dist;
+            bezier[5] = bezier[7] + t2y * dist;
+            float[] u = {0, 1};
+            emit(points, first, last, u, bezier, output);
+            return -1;
+        }
+
+        float[] u = chordLengthParameterize(points, first, last);
+        generateBezier(points, first, last, u, t1x, t1y, t2x, t2y, bezier);
+
+        int[] split = new int[1];
+        float maxError = computeMaxError(points, first, last, bezier, u, split);
+        if (maxError < errorSquared) {
+            emit(points, first, last, u, bezier, output);
+            return -1;
+        }
+
+        // If the error is not too large, try reparameterizing and fitting again.
+        if (maxError < errorSquared * 4) {
+            for (int i = 0; i < MAX_ITERATIONS; i++) {
+                reparameterize(points, first, last, u, bezier);
+                generateBezier(points, first, last, u, t1x, t1y, t2x, t2y, bezier);
+                maxError = computeMaxError(points, first, last, bezier, u, split);
+                if (maxError < errorSquared) {
+                    emit(points, first, last, u, bezier, output);
+                    return -1;
+                }
+            }
+        }
+        return split[0];
+    }
+
+    /**
+     * Solves for the inner control points with the least squares method, keeping them on the end tangents.
+     */
+    private static void generateBezier(float[] points, int first, int last, float[] u, float t1x, float t1y, float t2x,
+                                       float t2y, float[] bezier) {
+        float x0 = points[first * 3], y0 = points[first * 3 + 1];
+        float x3 = points[last * 3], y3 = points[last * 3 + 1];
+
+        double c00 = 0, c01 = 0, c11 = 0, r0 = 0, r1 = 0;
+        for (int i = 0; i < u.length; i++) {
+            float t = u[i];
+            float b0 = b0(t), b1 = b1(t), b2 = b2(t), b3 = b3(t);
+            float a1x = t1x * b1, a1y = t1y * b1;
+            float a2x = t2x * b2, a2y = t2y * b2;
+            c00 += a1x * a1x + a1y * a1y;
+            c01 += a1x * a2x + a1y * a2y;
+            c11 += a2x * a2x + a2y * a2y;
+
+            int p = (first + i) * 3;
+            float tx = points[p] - (x0 * (b0 + b1) + x3 * (b2 + b3));
+            float ty = points[p + 1] - (y0 * (b0 + b1) + y3 * (b2 + b3));
+            r0 += a1x * tx + a1y * ty;
+            r1 += a2x * tx + a2y * ty;
+        }
+
+        double det = c00 * c11 - c01 * c01;
+        double alpha1 = det == 0 ? 0 : (r0 * c11 - c01 * r1) / det;
+        double alpha2 = det == 0 ? 0 : (c00 * r1 - c01 * r0) / det;
+
+        // Fall back on the heuristic if the solution is degenerate.
+        float segmentLength = (float) Math.sqrt((x3 - x0) * (x3 - x0) + (y3 - y0) * (y3 - y0));
+        float epsilon = 1.0e-6f * segmentLength;
+        if (alpha1 < epsilon || alpha2 < epsilon) {
+            alpha1 = alpha2 = segmentLength / 3;
+        }
+
+        bezier[0] = x0;
+        bezier[1] = y0;
+        bezier[2] = x0 + t1x * (float) alpha1;
+        bezier[3] = y0 + t1y * (float) alpha1;
+        bezier[4] = x3 + t2x * (float) alpha2;
+        bezier[5] = y3 + t2y * (float) alpha2;
+        bezier[6] = x3;
+        bezier[7] = y3;
+    }
+
+    /**
+     * Outputs a curve along with the inner width control points fitted by least squares over the same parameters.
+     */
+    private static void emit(float[] points, int first, int last, float[] u, float[] bezier, Output output) {
+        float w0 = points[first * 3 + 2], w3 = points[last * 3 + 2];
+
+        double c00 = 0, c01 = 0, c11 = 0, r0 = 0, r1 = 0;
+        for (int i = 0; i < u.length; i++) {
+            float t = u[i];
+            float b1 = b1(t), b2 = b2(t);
+            c00 += b1 * b1;
+            c01 += b1 * b2;
+            c11 += b2 * b2;
+            float r = points[(first + i) * 3 + 2] - (w0 * b0(t) + w3 * b3(t));
+            r0 += b1 * r;
+            r1 += b2 * r;
+        }
+
+        double det = c00 * c11 - c01 * c01;
+        float w1, w2;
+        if (Math.abs(det) < 1.0e-12) {
+            w1 = w0 + (w3 - w0) / 3;
+            w2 = w0 + 2 * (w3 - w0) / 3;
+        } else {
+            w1 = (float) ((r0 * c11 - c01 * r1) / det);
+            w2 = (float) ((c00 * r1 - c01 * r0) / det);
+        }
+
+        output.add(bezier[2], bezier[3], w1, bezier[4], bezier[5], w2, bezier[6], bezier[7], w3);
+    }
+
+    /**
+     * Finds the largest squared distance of a point from the curve and where it is.
+     */
+    private static float computeMaxError(float[] points, int first, int last, float[] bezier, float[] u, int[] split) {
+        float maxDistance = 0;
+        split[0] = (first + last) / 2;
+        for (int i = first + 1; i < last; i++) {
+            float t = u[i - first];
+            float dx = evaluate(bezier, 0, t) - points[i * 3];
+            float dy = evaluate(bezier, 1, t) - points[i * 3 + 1];
+            float distance = dx * dx + dy * dy;
+            if (distance >= maxDistance) {
+                maxDistance = distance;
+                split[0] = i;
+            }
+        }
+        return maxDistance;
+    }
+
+    /**
+     * Improves the parameter of every point with a Newton-Raphson step towards its closest point on the curve.
+     */
+    private static void reparameterize(float[] points, int first, int last, float[] u, float[] bezier) {
+        for (int i = first; i <= last; i++) {
+            float t = u[i - first];
+            float x = evaluate(bezier, 0, t) - points[i * 3];
+            float y = evaluate(bezier, 1, t) - points[i * 3 + 1];
+
+            // First and second derivatives of the curve at t.
+            float mt = 1 - t;
+            float d1x = 3 * (mt * mt * (bezier[2] - bezier[0]) + 2 * mt * t * (bezier[4] - bezier[2]) + t * t * (bezier[6] - bezier[4]));
+            float d1y = 3 * (mt * mt * (bezier[3] - bezier[1]) + 2 * mt * t * (bezier[5] - bezier[3]) + t * t * (bezier[7] - bezier[5]));
+            float d2x = 6 * (mt * (bezier[4] - 2 * bezier[2] + bezier[0]) + t * (bezier[6] - 2 * bezier[4] + bezier[2]));
+            float d2y = 6 * (mt * (bezier[5] - 2 * bezier[3] + bezier[1]) + t * (bezier[7] - 2 * bezier[5] + bezier[3]));
+
+            float numerator = x * d1x + y * d1y;
+            float denominator = d1x * d1x + d1y * d1y + x * d2x + y * d2y;
+            if (denominator != 0) u[i - first] = t - numerator / denominator;
+        }
+    }
+
+    private static float[] chordLengthParameterize(float[] points, int first, int last) {
+        float[] u = new float[last - first + 1];
+        for (int i = first + 1; i <= last; i++) {
+            u[i - first] = u[i - first - 1] + distance(points, i, i - 1);
+        }
+        for (int i = 1; i < u.length; i++) {
+            u[i] /= u[u.length - 1];
+        }
+        return u;
+    }
+
+    private static float evaluate(float[] bezier, int axis, float t) {
+        return bezier[axis] * b0(t) + bezier[2 + axis] * b1(t) + bezier[4 + axis] * b2(t) + bezier[6 + axis] * b3(t);
+    }
+
+    private static void tangent(float[] points, int from, int to, float[] out, int offset) {
+        float dx = points[to * 3] - points[from * 3];
+        float dy = points[to * 3 + 1] - points[from * 3 + 1];
+        float length = (float) Math.sqrt(dx * dx + dy * dy);
+        out[offset] = dx / length;
+        out[offset + 1] = dy / length;
+    }
+
+    private static void centerTangent(float[] points, int center, float[] out) {
+        float dx = points[(center - 1) * 3] - points[(center + 1) * 3];
+        float dy = points[(center - 1) * 3 + 1] - points[(center + 1) * 3 + 1];
+        float length = (float) Math.sqrt(dx * dx + dy * dy);
+
+        // The neighbours coincide when the stroke doubles back, use the incoming direction instead.
+        if (length == 0) {
+            tangent(points, center, center - 1, out, 0);
+            return;
+        }
+        out[0] = dx / length;
+        out[1] = dy / length;
+    }
+
+    private static float distance(float[] points, int a, int b) {
+        float dx = points[a * 3] - points[b * 3];
+        float dy = points[a * 3 + 1] - points[b * 3 + 1];
+        return (float) Math.sqrt(dx * dx + dy * dy);
+    }
+
+    // Bernstein polynomials of degree three.
+
+    private static float b0(float t) {
+        float mt = 1 - t;
+        return mt * mt * mt;
+    }
+
+    private static float b1(float t) {
+        float mt = 1 - t;
+        return 3 * t * mt * mt;
+    }
+
+    private static float b2(float t) {
+        return 3 * t * t * (1 - t);
+    }
+
+    private static float b3(float t) {
+        return t * t * t;
+    }
+
+    private static class Output {
+        public float[] controlPoints = new float[48];
+        public int size;
+
+        public void start(float x, float y, float w) {
+            put(x, y, w);
+        }
+
+        public void add(float x1, float y1, float w1, float x2, float y2, float w2, float x3, float y3, float w3) {
+            put(x1, y1, w1);
+            put(x2, y2, w2);
+            put(x3, y3, w3);
+        }
+
+        private void put(float x, float y, float w) {
+            if (size + 3 > controlPoints.length) controlPoints = Arrays.copyOf(controlPoints, controlPoints.length * 2);
+            controlPoints[size++] = x;
+            controlPoints[size++] = y;
+            controlPoints[size++] = w;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/*******************************************************************************
+ Copyright © 2014 Kent Displays, Inc.
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ******************************************************************************/
+
+package com.improvelectronics.sync.android;
+
+/**
+ * Writes numbers as ASCII decimals with a fixed number of fraction digits into byte arrays, without the allocations
+ * and locale lookups of {@link String#format(String, Object...)}. Trailing zeros of the fraction are dropped. Used by the
+ * document writers, which write several numbers for every vertex.
+ */
+class DecimalFormatter {
+
+    private static final int[] POWERS = {1, 10, 100, 1000, 10000};
+
+    /**
+     * Most bytes a number can take.
+     */
+    public static final int MAX_LENGTH = 24;
+
+    private DecimalFormatter() {
+    }
+
+    /**
+     * Writes a number rounded to a number of fraction digits.
+     *
+     * @param value    number to write, must be finite
+     * @param decimals fraction digits, 0 to 4
+     * @param out      buffer that must hold {@link #MAX_LENGTH} bytes past offset
+     * @param offset   index in out to write at
+     * @return index after the last byte written
+     */
+    public static int format(float value, int decimals, byte[] out, int offset) {
+        int power = POWERS[decimals];
+        long scaled = Math.round((double) value * power);
+        if (scaled < 0) {
+            out[offset++] = '-';
+            scaled = -scaled;
+        }
+
+        long integer = scaled / power;
+        int fraction = (int) (scaled % power);
+        offset = formatInteger(integer, out, offset);
+
+        if (fraction != 0) {
+            // Drop trailing zeros.
+            int digits = decimals;
+            while (fraction % 10 == 0) {
+                fraction /= 10;
+                digits--;
+            }
+            out[offset++] = '.';
+            for (int i = digits - 1; i >= 0; i--) {
+                out[offset + i] = (byte) ('0' + fraction % 10);
+                fraction /= 10;
+            }
+            offset += digits;
+        }
+        return offset;
+    }
+
+    /**
+     * Writes a non-negative integer.
+     *
+     * @return index after the last byte written
+     */
+    public static int formatInteger(long value, byte[] out, int offset) {
+        int start = offset;
+        do {
+            out[offset++] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+
+        // Digits were written least significant first.
+        for (int i = start, j = offset - 1; i < j; i++, j--) {
+            byte digit = out[i];
+            out[i] = out[j];
+            out[j] = digit;
+        }
+        return offset;
+    }
+}
@@ -0,0 +1,317 @@
+/*******************************************************************************
+ Copyright © 2014 Kent Displays, Inc.
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ******************************************************************************/
+
+package com.improvelectronics.sync.android;
+
+/**
+ * Immutable set of parameters used by {@link Filtering} to turn capture reports into segments: the distance a segment
+ * must cover, the gains of the {@link PDSmoothingFilter}, and the table of line widths measured for the Boogie Board Sync
+ * at various stylus speeds and masses. Create a modified configuration with {@link Builder}, starting from
+ * {@link #DEFAULT}.
+ */
+public final class FilterConfig {
+
+    // Digitizer resolution is 0.01 mm.
+    private static final int TICKS_PER_MM = 100;
+
+    // Speed assumed when the stylus is lifted after a single point (mm/s).
+    private static final float DOT_VELOCITY = 75.0f;
+
+    /**
+     * Configuration matching the Boogie Board Sync hardware.
+     */
+    public static final FilterConfig DEFAULT = new Builder().build();
+
+    private final int mDistanceThreshold;
+    private final int mProportionalGain;
+    private final int mDerivativeGain;
+    private final float mMsPerSample;
+    private final float mPenAngleCos;
+    private final float mScale;
+    private final float[] mVelocities;
+    private final float[] mMasses;
+    private final float[][] mLineWidths;
+
+    // Lookup tables derived from the parameters, built on first use.
+    private volatile Tables mTables;
+
+    private FilterConfig(Builder builder) {
+        mDistanceThreshold = builder.mDistanceThreshold;
+        mProportionalGain = builder.mProportionalGain;
+        mDerivativeGain = builder.mDerivativeGain;
+        mMsPerSample = builder.mMsPerSample;
+        mPenAngleCos = builder.mPenAngleCos;
+        mScale = builder.mScale;
+        mVelocities = builder.mVelocities.clone();
+        mMasses = builder.mMasses.clone();
+        mLineWidths = new float[builder.mLineWidths.length][];
+        for (int i = 0; i < mLineWidths.length; i++) mLineWidths[i] = builder.mLineWidths[i].clone();
+    }
+
+    /**
+     * Distance in digitizer units the filtered stylus position has to move before a new segment is drawn.
+     *
+     * @return distance threshold
+     */
+    public int getDistanceThreshold() {
+        return mDistanceThreshold;
+    }
+
+    /**
+     * Proportional gain of the {@link PDSmoothingFilter} with 13 fractional bits (8192 = 1.0).
+     *
+     * @return proportional gain
+     */
+    public int getProportionalGain() {
+        return mProportionalGain;
+    }
+
+    /**
+     * Derivative gain of the {@link PDSmoothingFilter} with 13 fractional bits (8192 = 1.0).
+     *
+     * @return derivative gain
+     */
+    public int getDerivativeGain() {
+        return mDerivativeGain;
+    }
+
+    public float getMsPerSample() {
+        return mMsPerSample;
+    }
+
+    public float getPenAngleCos() {
+        return mPenAngleCos;
+    }
+
+    public float getScale() {
+        return mScale;
+    }
+
+    /**
+     * Returns the lookup tables derived from this configuration, building them if this is the first call. Building is
+     * cheap but can be done on a background thread before the configuration is handed to {@link Filtering}.
+     *
+     * @return derived tables
+     */
+    Tables getTables() {
+        Tables tables = mTables;
+        if (tables == null) {
+            tables = new Tables(this);
+            mTables = tables;
+        }
+        return tables;
+    }
+
+    /**
+     * Forces the derived lookup tables to be built.
+     */
+    public void prepare() {
+        getTables();
+    }
+
+    /**
+     * Convert from velocity in mm/s to distance (in digitizer units) between successive samples.
+     */
+    private float velocityToDistance(float velocity) {
+        return ((velocity) * TICKS_PER_MM * mMsPerSample / 1000);
+    }
+
+    /**
+     * Convert from line width expressed in mm to scaled line width expressed in digitizer units.
+     */
+    private float mmToDigitizer(float mm) {
+        return ((mm) * TICKS_PER_MM * mScale);
+    }
+
+    /**
+     * Convert from mass in grams (normal to surface) to corresponding digitizer pressure reading (along stylus).
+     */
+    private static int massToPressure(float mass, float penAngleCos) {
+        return (int) ((mass) * penAngleCos * 1023.0f / 600.0f + 0.5f);
+    }
+
+    /**
+     * Lookup tables in digitizer units used while filtering.
+     */
+    static final class Tables {
+        final int distanceThresholdSquared;
+        final float dotDistance;
+        // Distance between consecutive samples for each row of line widths.
+        final float[] distances;
+        // Digitizer pressure readings for each column of line widths.
+        final int[] pressures;
+        final float[][] lineWidths;
+
+        private Tables(FilterConfig config) {
+            distanceThresholdSquared = config.mDistanceThreshold * config.mDistanceThreshold;
+            dotDistance = config.velocityToDistance(DOT_VELOCITY);
+
+            distances = new float[config.mVelocities.length];
+            lineWidths = new float[config.mVelocities.length][];
+            for (int i = 0; i < distances.length; i++) {
+                distances[i] = config.velocityToDistance(config.mVelocities[i]);
+                lineWidths[i] = new float[config.mMasses.length];
+                for (int j = 0; j < config.mMasses.length; j++) {
+                    lineWidths[i][j] = config.mmToDigitizer(config.mLineWidths[i][j]);
+                }
+            }
+
+            pressures = new int[config.mMasses.length];
+            for (int j = 0; j < pressures.length; j++) {
+                pressures[j] = massToPressure(config.mMasses[j], config.mPenAngleCos);
+            }
+        }
+    }
+
+    public static class Builder {
+        private int mDistanceThreshold = 10;        // 10*0.01mm = 0.1mm
+        private int mProportionalGain = 1229;       // 1229/8192 = 0.1500 ~0.15f
+        private int mDerivativeGain = 4915;         // 4915/8192 = 0.6000 ~0.6f
+        private float mMsPerSample = 6.924f;        // 144.425 samples per second
+        private float mPenAngleCos = 0.866f;        // Assuming stylus held at 30 deg angle.
+        private float mScale = 0.75f;               // To make recorded lines sharper than actual device.
+
+        // Velocities (mm/s) for which line widths are provided.
+        private float[] mVelocities = {1.0f, 5.0f, 30.0f, 75.0f, 100.0f, 180.0f};
+
+        // Masses (g) for which line widths are provided.
+        private float[] mMasses = {10.0f, 25.0f, 50.0f, 100.0f, 150.0f, 200.0f, 250.0f, 300.0f, 350.0f, 400.0f, 450.0f, 500.0f,
+                550.0f, 600.0f};
+
+        // Line widths (mm) vs. mass at each velocity.
+        private float[][] mLineWidths = {
+                //   10g*       25g*       50g        100g       150g       200g       250g       300g       350g       400g
+                //   450g       500g       550g*      600g*
+                {0.720000f, 0.800000f, 0.908937f, 1.108957f, 1.266351f, 1.388042f, 1.462073f, 1.540000f, 1.618852f, 1.701938f,
+                        1.793265f, 1.860000f, 1.920000f, 1.954108f},  // 1 mm/s
+                {0.490000f, 0.530000f, 0.614119f, 0.758321f, 0.868824f, 0.910000f, 0.942034f, 1.000218f, 1.047881f, 1.083052f,
+                        1.155148f, 1.196536f, 1.250000f, 1.286546f},  // 5 mm/s
+                {0.300000f, 0.340000f, 0.387672f, 0.493372f, 0.565948f, 0.620261f, 0.673648f, 0.710716f, 0.746997f, 0.777846f,
+                        0.815101f, 0.837235f, 0.880000f, 0.926857f},  // 30 mm/s
+                {0.290000f, 0.295000f, 0.320000f, 0.374948f, 0.422921f, 0.473530f, 0.508386f, 0.541358f, 0.577623f, 0.600577f,
+                        0.621771f, 0.651861f, 0.670000f, 0.690000f},  // 75 mm/s
+                {0.280000f, 0.290000f, 0.302881f, 0.338898f, 0.387231f, 0.433664f, 0.452389f, 0.482745f, 0.516970f, 0.534589f,
+                        0.557370f, 0.581577f, 0.610000f, 0.620000f},  // 100 mm/s
+                {0.250000f, 0.260000f, 0.280375f, 0.311056f, 0.362906f, 0.390511f, 0.414745f, 0.436406f, 0.463840f, 0.478165f,
+                        0.501515f, 0.521805f, 0.540000f, 0.550000f}   // 180 mm/s
+        };
+
+        public Builder() {
+        }
+
+        public Builder(FilterConfig config) {
+            mDistanceThreshold = config.mDistanceThreshold;
+            mProportionalGain = config.mProportionalGain;
+            mDerivativeGain = config.mDerivativeGain;
+            mMsPerSample = config.mMsPerSample;
+            mPenAngleCos = config.mPenAngleCos;
+            mScale = config.mScale;
+            mVelocities = config.mVelocities;
+            mMasses = config.mMasses;
+            mLineWidths = config.mLineWidths;
+        }
+
+        /**
+         * @param distanceThreshold distance in digitizer units the stylus has to move before a new segment is drawn
+         */
+        public Builder setDistanceThreshold(int distanceThreshold) {
+            mDistanceThreshold = distanceThreshold;
+            return this;
+        }
+
+        /**
+         * @param proportionalGain proportional gain of the PD smoothing filter, 8192 = 1.0
+         * @param derivativeGain   derivative gain of the PD smoothing filter, 8192 = 1.0
+         */
+        public Builder setGains(int proportionalGain, int derivativeGain) {
+            mProportionalGain = proportionalGain;
+            mDerivativeGain = derivativeGain;
+            return this;
+        }
+
+        /**
+         * @param msPerSample time between capture reports of the digitizer in milliseconds
+         */
+        public Builder setMsPerSample(float msPerSample) {
+            mMsPerSample = msPerSample;
+            return this;
+        }
+
+        /**
+         * @param penAngleCos cosine of the angle between the stylus and the surface normal
+         */
+        public Builder setPenAngleCos(float penAngleCos) {
+            mPenAngleCos = penAngleCos;
+            return this;
+        }
+
+        /**
+         * @param scale factor applied to the line widths in the table
+         */
+        public Builder setScale(float scale) {
+            mScale = scale;
+            return this;
+        }
+
+        /**
+         * Sets the table of line widths.
+         *
+         * @param velocities ascending stylus speeds in mm/s, one for each row
+         * @param masses     ascending masses in grams, one for each column
+         * @param lineWidths line widths in mm, indexed by velocity then mass
+         */
+        public Builder setLineWidths(float[] velocities, float[] masses, float[][] lineWidths) {
+            mVelocities = velocities;
+            mMasses = masses;
+            mLineWidths = lineWidths;
+            return this;
+        }
+
+        public FilterConfig build() {
+            if (mDistanceThreshold <= 0) throw new IllegalArgumentException("distance threshold must be positive");
+            if (mMsPerSample <= 0) throw new IllegalArgumentException("ms per sample must be positive");
+            if (mVelocities.length < 2 || mMasses.length < 2) {
+                throw new IllegalArgumentException("line width table needs at least two velocities and two masses");
+            }
+            checkAscending(mVelocities, "velocities");
+            checkAscending(mMasses, "masses");
+            for (int i = 1; i < mMasses.length; i++) {
+                if (massToPressure(mMasses[i], mPenAngleCos) <= massToPressure(mMasses[i - 1], mPenAngleCos)) {
+                    throw new IllegalArgumentException("masses must map to distinct digitizer pressures");
+                }
+            }
+            if (mLineWidths.length != mVelocities.length) {
+                throw new IllegalArgumentException("line width table needs one row per velocity");
+            }
+            for (float[] row : mLineWidths) {
+                if (row.length != mMasses.length) throw new IllegalArgumentException("line width table needs one column per mass");
+            }
+            return new FilterConfig(this);
+        }
+
+        private static void checkAscending(float[] values, String name) {
+            for (int i = 1; i < values.length; i++) {
+                if (values[i] <= values[i - 1]) throw new IllegalArgumentException(name + " must be ascending");
+            }
+        }
+    }
+}
@@ -30,38 +30,188 @@ public class Filtering {
         NO_POINTS, ONE_POINT, MULTIPLE_POINTS
     }
 
+    /**
+     * Number of ints in a packed sample: x, y, pressure and flags.
+     */
+    public static final int SAMPLE_SIZE = 4;
+
+    /**
+     * Number of floats in an emitted segment record: x0, y0, x1, y1 and line width.
+     */
+    public static final int SEGMENT_SIZE = 5;
+
+    /**
+     * Most segments a single sample can emit (pen up converges on the final point over four iterations).
+     */
+    public static final int MAX_SEGMENTS_PER_SAMPLE = 4;
+
+    /**
+     * Most sample intervals a predicted segment may extrapolate ahead of the filter.
+     */
+    public static final int MAX_PREDICTION_SAMPLES = 3;
+
     // Switch states.
     private static final byte TSW_FLAG = 0x01;
     private static final byte RDY_FLAG = 0x01 << 2;
 
-    // Set distance threshold for drawing a new segment (10*0.01mm = 0.1mm).
-    private static final int DISTANCE_THRESHOLD_SQUARED = (10 * 10);
+    // Shared instance backing the static filterSyncCaptureReport method.
+    private static final Filtering sDefaultFiltering = new Filtering();
+
+    private PathState mPathState = PathState.NO_POINTS;
+    private final Filter mFilter;
+
+    // Smoothing filter to switch to at the start of the next trace.
+    private SmoothingFilter mPendingSmoothingFilter;
+
+    // Parameters and the lookup tables derived from them.
+    private FilterConfig mConfig;
+    private FilterConfig.Tables mTables;
 
-    private static PathState mPathState = PathState.NO_POINTS;
-    private static Filter mFilter = new Filter();
+    // Configuration to switch to at the start of the next trace.
+    private FilterConfig mPendingConfig;
 
     // State of line width filter.
-    private static float mOldLineWidth = -1.0f;
+    private float mOldLineWidth = -1.0f;
 
-    private static SyncCaptureReport mLastCapture;
+    // Last sample received, used for finalizing trace at pen up.
+    private int mLastX, mLastY, mLastPressure;
+
+    // Scratch output used when filtering a single capture report into paths.
+    private final float[] mSegments = new float[MAX_SEGMENTS_PER_SAMPLE * SEGMENT_SIZE];
+
+    /**
+     * Creates a filter that smooths traces with the default {@link PDSmoothingFilter}.
+     */
+    public Filtering() {
+        this(FilterConfig.DEFAULT);
+    }
+
+    /**
+     * Creates a filter that smooths traces with the provided smoothing filter.
+     *
+     * @param smoothingFilter dynamic filter applied to every sample of a trace
+     */
+    public Filtering(SmoothingFilter smoothingFilter) {
+        this(FilterConfig.DEFAULT, smoothingFilter);
+    }
+
+    /**
+     * Creates a filter with the provided parameters that smooths traces with a {@link PDSmoothingFilter}.
+     *
+     * @param config parameters of the filter
+     */
+    public Filtering(FilterConfig config) {
+        this(config, new PDSmoothingFilter(config.getProportionalGain(), config.getDerivativeGain()));
+    }
+
+    /**
+     * Creates a filter with the provided parameters that smooths traces with the provided smoothing filter.
+     *
+     * @param config          parameters of the filter
+     * @param smoothingFilter dynamic filter applied to every sample of a trace
+     */
+    public Filtering(FilterConfig config, SmoothingFilter smoothingFilter) {
+        mFilter = new Filter(smoothingFilter);
+        mConfig = config;
+        mTables = config.getTables();
+    }
 
     public static List<SyncPath> filterSyncCaptureReport(SyncCaptureReport captureReport) {
+        return sDefaultFiltering.filter(captureReport);
+    }
+
+    /**
+     * Filters a capture report and returns the paths it completed.
+     *
+     * @param captureReport report returned from the Boogie Board Sync
+     * @return paths that were emitted
+     */
+    public List<SyncPath> filter(SyncCaptureReport captureReport) {
+        int count = filterCaptureReport(captureReport, mSegments, 0);
+        List<SyncPath> paths = new ArrayList<SyncPath>(count);
+        for (int i = 0; i < count; i++) {
+            paths.add(createPath(mSegments, i * SEGMENT_SIZE));
+        }
+        return paths;
+    }
+
+    /**
+     * Filters a capture report and writes the emitted segments into a caller owned buffer.
+     *
+     * @param captureReport report returned from the Boogie Board Sync
+     * @param out           buffer that must hold at least {@link #MAX_SEGMENTS_PER_SAMPLE} segments past outOffset
+     * @param outOffset     index in out to write the first segment at
+     * @return number of segments written
+     */
+    public int filterCaptureReport(SyncCaptureReport captureReport, float[] out, int outOffset) {
+        return filterSample((int) captureReport.getX(), (int) captureReport.getY(), (int) captureReport.getPressure(),
+                captureReport.getFlags() & 0xFF, out, outOffset);
+    }
+
+    /**
+     * Filters a batch of packed samples and writes the emitted segments into a caller owned buffer. Each sample is
+     * {@link #SAMPLE_SIZE} ints (x, y, pressure, flags) and each segment is {@link #SEGMENT_SIZE} floats (x0, y0, x1, y1,
+     * width). Nothing is allocated, so this can be used for both live capture and offline reprocessing of stored sessions.
+     *
+     * @param samples   packed samples
+     * @param offset    index in samples of the first sample
+     * @param count     number of samples to filter
+     * @param out       buffer that must hold at least count * {@link #MAX_SEGMENTS_PER_SAMPLE} segments past outOffset
+     * @param outOffset index in out to write the first segment at
+     * @return number of segments written
+     */
+    public int filterSamples(int[] samples, int offset, int count, float[] out, int outOffset) {
+        if (out.length - outOffset < count * MAX_SEGMENTS_PER_SAMPLE * SEGMENT_SIZE) {
+            throw new IllegalArgumentException("output buffer too small for " + count + " samples");
+        }
+
+        int segments = 0;
+        int end = offset + count * SAMPLE_SIZE;
+        for (int i = offset; i < end; i += SAMPLE_SIZE) {
+            segments += filterSample(samples[i], samples[i + 1], samples[i + 2], samples[i + 3], out,
+                    outOffset + segments * SEGMENT_SIZE);
+        }
+        return segments;
+    }
+
+    /**
+     * Filters a single sample and writes the emitted segments into a caller owned buffer.
+     *
+     * @param x         digitizer x coordinate
+     * @param y         digitizer y coordinate
+     * @param pressure  digitizer pressure reading
+     * @param flags     switch flags of the sample
+     * @param out       buffer that must hold at least {@link #MAX_SEGMENTS_PER_SAMPLE} segments past outOffset
+     * @param outOffset index in out to write the first segment at
+     * @return number of segments written
+     */
+    public int filterSample(int x, int y, int pressure, int flags, float[] out, int outOffset) {
         float lineWidth;
         int distSquared;
         float velAvg, pressAvg;
         int i;
-        List<SyncPath> paths = new ArrayList<SyncPath>();
+        int segments = 0;
 
         // Process based on number of points already received in current trace.
         switch (mPathState) {
             case NO_POINTS:
-                if ((captureReport.getFlags() & (RDY_FLAG + TSW_FLAG)) == (RDY_FLAG + TSW_FLAG))  // Contact?
+                if ((flags & (RDY_FLAG + TSW_FLAG)) == (RDY_FLAG + TSW_FLAG))  // Contact?
                 {
                     // Have first point.
                     mPathState = PathState.ONE_POINT;
 
+                    // Switch configurations and smoothing filters only between traces.
+                    if (mPendingConfig != null) {
+                        applyFilterConfig(mPendingConfig);
+                        mPendingConfig = null;
+                    }
+                    if (mPendingSmoothingFilter != null) {
+                        mFilter.smoothing = mPendingSmoothingFilter;
+                        mPendingSmoothingFilter = null;
+                    }
+
                     // Initialize the dynamic filter.
-                    setFilterPosition(mFilter, captureReport);
+                    setFilterPosition(mFilter, x, y, pressure);
 
                     // Reset filter for line width.
                     resetLineWidthFilter();
@@ -69,13 +219,13 @@ public class Filtering {
                 break;
 
             case ONE_POINT:
-                if ((captureReport.getFlags() & (RDY_FLAG + TSW_FLAG)) == (RDY_FLAG + TSW_FLAG))  // Contact?
+                if ((flags & (RDY_FLAG + TSW_FLAG)) == (RDY_FLAG + TSW_FLAG))  // Contact?
                 {
                     // Apply filter and get distance**2 of filtered position from last rendered position.
-                    distSquared = applyFilter(mFilter, captureReport);
+                    distSquared = applyFilter(mFilter, x, y, pressure);
 
                     // Render new position to PDF if sufficiently far from last rendered position.
-                    if (distSquared >= DISTANCE_THRESHOLD_SQUARED) {
+                    if (distSquared >= mTables.distanceThresholdSquared) {
                         mPathState = PathState.MULTIPLE_POINTS;
 
                         // Compute/draw the first segment of the trace to PDF.
@@ -83,7 +233,7 @@ public class Filtering {
                         pressAvg = ((float) mFilter.last.pressure + mFilter.current.pressure) / 2;
                         lineWidth = computeLineWidth(velAvg, pressAvg);
 
-                        paths.add(createPathWithLineWidth(lineWidth));
+                        writeSegment(lineWidth, out, outOffset + segments++ * SEGMENT_SIZE);
 
                         // Reset "last" point for filter.
                         setLastFilter(mFilter);
@@ -97,24 +247,24 @@ public class Filtering {
                     pressAvg = mFilter.current.pressure;
                     lineWidth = computeLineWidth(velAvg, pressAvg);
 
-                    paths.add(createPathWithLineWidth(lineWidth));
+                    writeSegment(lineWidth, out, outOffset + segments++ * SEGMENT_SIZE);
                 }
                 break;
 
             case MULTIPLE_POINTS:
-                if ((captureReport.getFlags() & (RDY_FLAG + TSW_FLAG)) == (RDY_FLAG + TSW_FLAG))  // Contact?
+                if ((flags & (RDY_FLAG + TSW_FLAG)) == (RDY_FLAG + TSW_FLAG))  // Contact?
                 {
                     // Apply filter and get distance**2 of filtered position from last rendered position.
-                    distSquared = applyFilter(mFilter, captureReport);
+                    distSquared = applyFilter(mFilter, x, y, pressure);
 
                     // Render new position to PDF if sufficiently far from last rendered position.
-                    if (distSquared >= DISTANCE_THRESHOLD_SQUARED) {
+                    if (distSquared >= mTables.distanceThresholdSquared) {
                         // Compute/draw the next trace segment to PDF.
                         velAvg = (float)Math.sqrt(distSquared) / mFilter.time;
                         pressAvg = ((float) mFilter.last.pressure + mFilter.current.pressure) / 2;
                         lineWidth = computeLineWidth(velAvg, pressAvg);
 
-                        paths.add(createPathWithLineWidth(lineWidth));
+                        writeSegment(lineWidth, out, outOffset + segments++ * SEGMENT_SIZE);
 
                         // Reset "last" point for filter.
                         setLastFilter(mFilter);
@@ -126,20 +276,21 @@ public class Filtering {
                     // Will use fixed (current) velocity to compute line width during final convergence
                     // to prevent artificial blobbing at the end of traces (due to artificial slowdown
                     // induced by repeating final digitizer coordinate).
-                    velAvg = (float)Math.sqrt(mFilter.velocity.x * mFilter.velocity.x + mFilter.velocity.y * mFilter.velocity.y);
+                    velAvg = (float) Math.sqrt((double) mFilter.smoothing.getVelocityX() * mFilter.smoothing.getVelocityX()
+                            + (double) mFilter.smoothing.getVelocityY() * mFilter.smoothing.getVelocityY());
 
                     // Provide filter final coordinate multiple times to converge on pen up point.
                     for (i = 0; i < 4; i++) {
                         // Apply filter and get distance**2 of filtered position from last rendered position.
-                        distSquared = applyFilter(mFilter, mLastCapture);
+                        distSquared = applyFilter(mFilter, mLastX, mLastY, mLastPressure);
 
                         // Render new position to PDF if sufficiently far from last rendered position.
-                        if (distSquared >= DISTANCE_THRESHOLD_SQUARED) {
+                        if (distSquared >= mTables.distanceThresholdSquared) {
                             // Compute line width.
                             pressAvg = ((float) mFilter.last.pressure + mFilter.current.pressure) / 2;
                             lineWidth = computeLineWidth(velAvg, pressAvg);
 
-                            paths.add(createPathWithLineWidth(lineWidth));
+                            writeSegment(lineWidth, out, outOffset + segments++ * SEGMENT_SIZE);
 
                             // Reset "last" point for filter.
                             setLastFilter(mFilter);
@@ -150,15 +301,156 @@ public class Filtering {
         }
 
         // Store coordinate for finalizing trace at pen up.
-        mLastCapture = captureReport;
+        mLastX = x;
+        mLastY = y;
+        mLastPressure = pressure;
 
-        return paths;
+        return segments;
+    }
+
+    /**
+     * Extrapolates the trace being drawn from the velocity of the smoothing filter and writes a provisional segment from
+     * the last drawn point to the predicted pen position. The filter state is not changed, so the prediction should be
+     * discarded once the next sample has been filtered.
+     *
+     * @param samplesAhead number of sample intervals to extrapolate, 1 to {@link #MAX_PREDICTION_SAMPLES}
+     * @param out          buffer that must hold one segment past outOffset
+     * @param outOffset    index in out to write the segment at
+     * @return number of segments written, 0 if the stylus is not down
+     */
+    public int predictSegment(int samplesAhead, float[] out, int outOffset) {
+        if (samplesAhead < 1 || samplesAhead > MAX_PREDICTION_SAMPLES) {
+            throw new IllegalArgumentException("can only predict 1 to " + MAX_PREDICTION_SAMPLES + " samples ahead");
+        }
+        if (mPathState == PathState.NO_POINTS) return 0;
+
+        out[outOffset] = mFilter.last.x;
+        out[outOffset + 1] = mFilter.last.y;
+        out[outOffset + 2] = mFilter.current.x + samplesAhead * mFilter.smoothing.getVelocityX();
+        out[outOffset + 3] = mFilter.current.y + samplesAhead * mFilter.smoothing.getVelocityY();
+
+        // Use the width of the last segment, or the width of a dot if none has been drawn yet.
+        out[outOffset + 4] = mOldLineWidth >= 0 ? mOldLineWidth : predictDotWidth();
+        return 1;
+    }
+
+    private float predictDotWidth() {
+        float lineWidth = computeLineWidth(-1.0f, mFilter.current.pressure);
+        resetLineWidthFilter();
+        return lineWidth;
+    }
+
+    /**
+     * Returns the state of the trace currently being filtered.
+     *
+     * @return path state
+     */
+    public PathState getPathState() {
+        return mPathState;
+    }
+
+    /**
+     * Returns the smoothing filter used for the trace currently being filtered.
+     *
+     * @return smoothing filter
+     */
+    public SmoothingFilter getSmoothingFilter() {
+        return mPendingSmoothingFilter != null ? mPendingSmoothingFilter : mFilter.smoothing;
+    }
+
+    /**
+     * Sets the smoothing filter used for traces. If a trace is in progress the new filter is used starting with the next
+     * trace so a stroke is never smoothed by two different filters.
+     *
+     * @param smoothingFilter dynamic filter applied to every sample of a trace
+     */
+    public void setSmoothingFilter(SmoothingFilter smoothingFilter) {
+        if (smoothingFilter == null) throw new IllegalArgumentException("smoothing filter cannot be null");
+
+        if (mPathState == PathState.NO_POINTS) {
+            mFilter.smoothing = smoothingFilter;
+            mPendingSmoothingFilter = null;
+        } else {
+            mPendingSmoothingFilter = smoothingFilter;
+        }
+    }
+
+    /**
+     * Returns the configuration used for the trace currently being filtered.
+     *
+     * @return configuration
+     */
+    public FilterConfig getFilterConfig() {
+        return mPendingConfig != null ? mPendingConfig : mConfig;
+    }
+
+    /**
+     * Sets the parameters of the filter. If a trace is in progress the new configuration is used starting with the next
+     * trace. When the smoothing filter is a {@link PDSmoothingFilter} its gains are updated from the configuration.
+     *
+     * @param config parameters of the filter, call {@link FilterConfig#prepare()} beforehand to build its lookup tables
+     *               off the filtering thread
+     */
+    public void setFilterConfig(FilterConfig config) {
+        if (config == null) throw new IllegalArgumentException("filter config cannot be null");
+
+        if (mPathState == PathState.NO_POINTS) {
+            applyFilterConfig(config);
+            mPendingConfig = null;
+        } else {
+            mPendingConfig = config;
+        }
+    }
+
+    private void applyFilterConfig(FilterConfig config) {
+        mConfig = config;
+        mTables = config.getTables();
+        if (mFilter.smoothing instanceof PDSmoothingFilter) {
+            ((PDSmoothingFilter) mFilter.smoothing).setGains(config.getProportionalGain(), config.getDerivativeGain());
+        }
+    }
+
+    /**
+     * Discards any trace in progress so the next sample is treated as the start of a new session.
+     */
+    public void reset() {
+        mPathState = PathState.NO_POINTS;
+        resetLineWidthFilter();
+    }
+
+    /**
+     * Packs a capture report into {@link #SAMPLE_SIZE} ints for use with {@link #filterSamples(int[], int, int, float[], int)}.
+     *
+     * @param captureReport report returned from the Boogie Board Sync
+     * @param samples       destination of the packed sample
+     * @param offset        index in samples to write the sample at
+     */
+    public static void packCaptureReport(SyncCaptureReport captureReport, int[] samples, int offset) {
+        samples[offset] = (int) captureReport.getX();
+        samples[offset + 1] = (int) captureReport.getY();
+        samples[offset + 2] = (int) captureReport.getPressure();
+        samples[offset + 3] = captureReport.getFlags() & 0xFF;
+    }
+
+    /**
+     * Creates a path from a segment record written by one of the filter methods.
+     *
+     * @param segments buffer containing segment records
+     * @param offset   index in segments of the record
+     * @return path with a single line segment and its stroke width
+     */
+    public static SyncPath createPath(float[] segments, int offset) {
+        SyncPath path = new SyncPath();
+        path.moveTo(segments[offset], segments[offset + 1]);
+        path.setStrokeWidth(segments[offset + 4]);
+        path.lineTo(segments[offset + 2], segments[offset + 3]);
+        return path;
     }
 
     /**
      * Clears line width filter for start of a new trace.
      */
-    private static void resetLineWidthFilter() {
+    private void resetLineWidthFilter() {
         mOldLineWidth = -1.0f;
     }
 
@@ -166,13 +458,15 @@ public class Filtering {
      * Initializes a provided dynamic filter with the first point in a trace.
      *
      * @param f
-     * @param captureReport
+     * @param x
+     * @param y
+     * @param pressure
      */
-    private static void setFilterPosition(Filter f, SyncCaptureReport captureReport) {
-        f.last.x = f.current.x = (int) captureReport.getX();
-        f.last.y = f.current.y = (int) captureReport.getY();
-        f.last.pressure = f.current.pressure = (int) captureReport.getPressure();
-        f.velocity.x = f.velocity.y = f.velocity.pressure = 0;
+    private static void setFilterPosition(Filter f, int x, int y, int pressure) {
+        f.last.x = f.current.x = x;
+        f.last.y = f.current.y = y;
+        f.last.pressure = f.current.pressure = pressure;
+        f.smoothing.reset(x, y, pressure);
         f.time = 0;
     }
 
@@ -188,34 +482,19 @@ public class Filtering {
         f.time = 0;
     }
 
-    // Dynamic filter Proportional and Derivative controller gains
-    // (includes effects of mass and sample time (K*T/mass)).
-    private static final int KPP = 1229;   // 1229/8192 = 0.1500 ~0.15f
-    private static final int KDD = 4915;   // 4915/8192 = 0.6000 ~0.6f
-
     // Updates dynamic filter state based on new reference coordinate.
-    private static int applyFilter(Filter f, SyncCaptureReport captureReport) {
-        int ax, ay, ap;
+    private static int applyFilter(Filter f, int x, int y, int pressure) {
         int dist_sq;
 
         // Update delta time (samples) since last segment drawn (threshold met).
         if (f.time < 255)
             f.time++;
 
-        // Calculate 8192 (= 2^13) x acceleration.
-        ax = KPP * ((int) captureReport.getX() - f.current.x) - KDD * f.velocity.x;
-        ay = KPP * ((int) captureReport.getY() - f.current.y) - KDD * f.velocity.y;
-        ap = KPP * ((int) captureReport.getPressure() - f.current.pressure) - KDD * f.velocity.pressure;
-
-        // Calculate new position.
-        f.current.x += f.velocity.x;
-        f.current.y += f.velocity.y;
-        f.current.pressure += f.velocity.pressure;
-
-        // Calculate new velocity.
-        f.velocity.x = (((int) f.velocity.x << 13) + ax) >> 13;
-        f.velocity.y = (((int) f.velocity.y << 13) + ay) >> 13;
-        f.velocity.pressure = (((int) f.velocity.pressure << 13) + ap) >> 13;
+        // Advance the smoothing filter by one sample.
+        f.smoothing.update(x, y, pressure);
+        f.current.x = f.smoothing.getX();
+        f.current.y = f.smoothing.getY();
+        f.current.pressure = f.smoothing.getPressure();
 
         // Calculate squared distance of current point from "last" point.
         dist_sq = ((f.current.x - f.last.x) * (f.current.x - f.last.x) + (f.current.y - f.last.y) * (f.current.y - f.last.y));
@@ -230,47 +509,47 @@ public class Filtering {
      * @param vel        velocity expressed in digitizer units per sample interval
      * @param pressure   digitizer pressure reading
      */
-    private static float computeLineWidth(float vel, float pressure) {
+    private float computeLineWidth(float vel, float pressure) {
         int i, j;
         float dist;
         float lwa, lwb, lw;
 
         // Compute distance btw. successive samples in digitizer units.
         if (vel < 0)
-            dist = velocityToDistance(75.0f);   // Don't know real speed if only have one point => Assume a mid-level.
+            dist = mTables.dotDistance;   // Don't know real speed if only have one point => Assume a mid-level.
         else
             dist = vel;
 
         // Saturate distance at range we have data for.
-        if (dist < lineWidthMapArray[0].distance)
-            dist = lineWidthMapArray[0].distance;
-        else if (dist > lineWidthMapArray[lineWidthMapArray.length - 1].distance)
-            dist = lineWidthMapArray[lineWidthMapArray.length - 1].distance;
+        if (dist < mTables.distances[0])
+            dist = mTables.distances[0];
+        else if (dist > mTables.distances[mTables.distances.length - 1])
+            dist = mTables.distances[mTables.distances.length - 1];
 
         // Saturate pressure at range we have data for.
-        if (pressure < mass[0])
-            pressure = mass[0];
-        else if (pressure > mass[mass.length - 1])
-            pressure = mass[mass.length - 1];
+        if (pressure < mTables.pressures[0])
+            pressure = mTables.pressures[0];
+        else if (pressure > mTables.pressures[mTables.pressures.length - 1])
+            pressure = mTables.pressures[mTables.pressures.length - 1];
 
         // Find the indices for distance (velocity).
-        for (i = 1; i < lineWidthMapArray.length; i++) {
-            if (dist <= lineWidthMapArray[i].distance)
+        for (i = 1; i < mTables.distances.length; i++) {
+            if (dist <= mTables.distances[i])
                 break;
         }
 
         // Find the indices for mass (pressure).
-        for (j = 1; i < mass.length; j++) {
-            if (pressure <= mass[j])
+        for (j = 1; j < mTables.pressures.length; j++) {
+            if (pressure <= mTables.pressures[j])
                 break;
         }
 
         // Interpolate based on mass (pressure) first.
-        lwa = lineWidthMapArray[i - 1].lineWidth[j - 1] + (pressure - mass[j - 1]) * (lineWidthMapArray[i - 1].lineWidth[j] - lineWidthMapArray[i - 1].lineWidth[j - 1]) / (mass[j] - mass[j - 1]);
-        lwb = lineWidthMapArray[i].lineWidth[j - 1] + (pressure - mass[j - 1]) * (lineWidthMapArray[i].lineWidth[j] - lineWidthMapArray[i].lineWidth[j - 1]) / (mass[j] - mass[j - 1]);
+        lwa = mTables.lineWidths[i - 1][j - 1] + (pressure - mTables.pressures[j - 1]) * (mTables.lineWidths[i - 1][j] - mTables.lineWidths[i - 1][j - 1]) / (mTables.pressures[j] - mTables.pressures[j - 1]);
+        lwb = mTables.lineWidths[i][j - 1] + (pressure - mTables.pressures[j - 1]) * (mTables.lineWidths[i][j] - mTables.lineWidths[i][j - 1]) / (mTables.pressures[j] - mTables.pressures[j - 1]);
 
         // Interpolate based on speed (distance) second.
-        lw = lwa + (dist - lineWidthMapArray[i - 1].distance) * (lwb - lwa) / (lineWidthMapArray[i].distance - lineWidthMapArray[i - 1].distance);
+        lw = lwa + (dist - mTables.distances[i - 1]) * (lwb - lwa) / (mTables.distances[i] - mTables.distances[i - 1]);
 
         // Initialize filter if needed.
         // (The max value helps eliminate ink blobs at the start of traces due to impact pressures and/or low speeds.)
@@ -304,110 +583,24 @@ public class Filtering {
         return lw;
     }
 
-    private static SyncPath createPathWithLineWidth(float lineWidth) {
-        SyncPath path = new SyncPath();
-        path.moveTo(mFilter.last.x, mFilter.last.y);
-        path.setStrokeWidth(lineWidth);
-        path.lineTo(mFilter.current.x, mFilter.current.y);
-        return path;
-    }
-
-    // Digitizer resolution is 0.01 mm.
-    private static final int TICKS_PER_MM = 100;
-    // 144.425 samples per second
-    private static final float MS_PER_SAMPLE = 6.924f;
-    // Assuming stylus held at 30 deg angle.
-    private static final float PEN_ANGLE_COS = 0.866f;
-    // Scale factor for reported linewidth (to make recorded lines sharper than actual device).
-    private static final float SCALE = 0.75f;
-
-    // Array of digitizer pressure readings for which line widths are provided.
-    private static final int mass[] = {massToPressure(10.0f), massToPressure(25.0f), massToPressure(50.0f), massToPressure(100.0f),
-            massToPressure(150.0f), massToPressure(200.0f), massToPressure(250.0f), massToPressure(300.0f), massToPressure(350.0f),
-            massToPressure(400.0f), massToPressure(450.0f), massToPressure(500.0f), massToPressure(550.0f), massToPressure(600.0f)};
-
-    // Array of line widths vs. pressure at various velocities.
-    private static final LineWidthMap lineWidthMapArray[] = new LineWidthMap[]
-            {
-                    //   v(mm/s)       10g*               25g*               50g               100g               150g               200g
-                    //     250g               300g               350g               400g               450g               500g               550g*
-                    //             600g*
-                    new LineWidthMap(velocityToDistance(1.0f), new float[]{mmToDigitizer(0.720000f), mmToDigitizer(0.800000f),
-                            mmToDigitizer(0.908937f), mmToDigitizer(1.108957f), mmToDigitizer(1.266351f), mmToDigitizer(1.388042f),
-                            mmToDigitizer(1.462073f), mmToDigitizer(1.540000f), mmToDigitizer(1.618852f), mmToDigitizer(1.701938f),
-                            mmToDigitizer(1.793265f), mmToDigitizer(1.860000f), mmToDigitizer(1.920000f), mmToDigitizer(1.954108f)}),
-                    new LineWidthMap(velocityToDistance(5.0f), new float[]{mmToDigitizer(0.490000f), mmToDigitizer(0.530000f),
-                            mmToDigitizer(0.614119f), mmToDigitizer(0.758321f), mmToDigitizer(0.868824f), mmToDigitizer(0.910000f),
-                            mmToDigitizer(0.942034f), mmToDigitizer(1.000218f), mmToDigitizer(1.047881f), mmToDigitizer(1.083052f),
-                            mmToDigitizer(1.155148f), mmToDigitizer(1.196536f), mmToDigitizer(1.250000f), mmToDigitizer(1.286546f)}),
-                    new LineWidthMap(velocityToDistance(30.0f), new float[]{mmToDigitizer(0.300000f), mmToDigitizer(0.340000f),
-                            mmToDigitizer(0.387672f), mmToDigitizer(0.493372f), mmToDigitizer(0.565948f), mmToDigitizer(0.620261f),
-                            mmToDigitizer(0.673648f), mmToDigitizer(0.710716f), mmToDigitizer(0.746997f), mmToDigitizer(0.777846f),
-                            mmToDigitizer(0.815101f), mmToDigitizer(0.837235f), mmToDigitizer(0.880000f), mmToDigitizer(0.926857f)}),
-                    new LineWidthMap(velocityToDistance(75.0f), new float[]{mmToDigitizer(0.290000f), mmToDigitizer(0.295000f),
-                            mmToDigitizer(0.320000f), mmToDigitizer(0.374948f), mmToDigitizer(0.422921f), mmToDigitizer(0.473530f),
-                            mmToDigitizer(0.508386f), mmToDigitizer(0.541358f), mmToDigitizer(0.577623f), mmToDigitizer(0.600577f),
-                            mmToDigitizer(0.621771f), mmToDigitizer(0.651861f), mmToDigitizer(0.670000f), mmToDigitizer(0.690000f)}),
-                    new LineWidthMap(velocityToDistance(100.0f), new float[]{mmToDigitizer(0.280000f), mmToDigitizer(0.290000f),
-                            mmToDigitizer(0.302881f), mmToDigitizer(0.338898f), mmToDigitizer(0.387231f), mmToDigitizer(0.433664f),
-                            mmToDigitizer(0.452389f), mmToDigitizer(0.482745f), mmToDigitizer(0.516970f), mmToDigitizer(0.534589f),
-                            mmToDigitizer(0.557370f), mmToDigitizer(0.581577f), mmToDigitizer(0.610000f), mmToDigitizer(0.620000f)}),
-                    new LineWidthMap(velocityToDistance(180.0f), new float[]{mmToDigitizer(0.250000f), mmToDigitizer(0.260000f),
-                            mmToDigitizer(0.280375f), mmToDigitizer(0.311056f), mmToDigitizer(0.362906f), mmToDigitizer(0.390511f),
-                            mmToDigitizer(0.414745f), mmToDigitizer(0.436406f), mmToDigitizer(0.463840f), mmToDigitizer(0.478165f),
-                            mmToDigitizer(0.501515f), mmToDigitizer(0.521805f), mmToDigitizer(0.540000f), mmToDigitizer(0.550000f)})
-            };
-
-    /**
-     * Convert from velocity in mm/s to distance (in digitizer units) between successive samples.
-     *
-     * @param velocity
-     * @return
-     */
-    private static float velocityToDistance(float velocity) {
-        return ((velocity) * TICKS_PER_MM * MS_PER_SAMPLE / 1000);
-    }
-
-    /**
-     * Convert from line width expressed in mm to scaled line width expressed in digitizer units.
-     *
-     * @param mm
-     * @return
-     */
-    private static float mmToDigitizer(float mm) {
-        return ((mm) * TICKS_PER_MM * SCALE);
-    }
-
-    /**
-     * Convert from mass in grams (normal to surface) to corresponding digitizer pressure reading (along stylus).
-     *
-     * @param mass
-     * @return
-     */
-    private static int massToPressure(float mass) {
-        return (int) ((mass) * PEN_ANGLE_COS * 1023.0f / 600.0f + 0.5f);
+    private void writeSegment(float lineWidth, float[] out, int offset) {
+        out[offset] = mFilter.last.x;
+        out[offset + 1] = mFilter.last.y;
+        out[offset + 2] = mFilter.current.x;
+        out[offset + 3] = mFilter.current.y;
+        out[offset + 4] = lineWidth;
     }
 
     private static class Filter {
         public Coordinate last;
         public Coordinate current;
-        public Coordinate velocity;
+        public SmoothingFilter smoothing;
         public int time;
 
-        public Filter() {
+        public Filter(SmoothingFilter smoothing) {
             last = new Coordinate();
             current = new Coordinate();
-            velocity = new Coordinate();
-        }
-    }
-
-    private static class LineWidthMap {
-        public float distance;          // In digitizer units (speed ~ distance between consecutive points).
-        public float lineWidth[];     // In digitizer units.
-
-        public LineWidthMap(float distance, float lineWidth[]) {
-            this.distance = distance;
-            this.lineWidth = lineWidth;
+            this.smoothing = smoothing;
         }
     }
 
@@ -0,0 +1,127 @@
+/*******************************************************************************
+ Copyright © 2014 Kent Displays, Inc.
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ******************************************************************************/
+
+package com.improvelectronics.sync.android;
+
+/**
+ * Kalman filter with a constant velocity model for each axis. Acceleration of the stylus is treated as process noise and
+ * the digitizer reading as a noisy measurement of position.
+ */
+public class KalmanSmoothingFilter implements SmoothingFilter {
+
+    private final Axis mX, mY, mPressure;
+
+    /**
+     * Creates a filter with defaults tuned for the Boogie Board Sync digitizer.
+     */
+    public KalmanSmoothingFilter() {
+        this(4.0f, 100.0f);
+    }
+
+    /**
+     * @param processNoise     variance of the stylus acceleration in (digitizer units per sample interval squared) squared
+     * @param measurementNoise variance of a digitizer reading in digitizer units squared
+     */
+    public KalmanSmoothingFilter(float processNoise, float measurementNoise) {
+        mX = new Axis(processNoise, measurementNoise);
+        mY = new Axis(processNoise, measurementNoise);
+        mPressure = new Axis(processNoise, measurementNoise);
+    }
+
+    @Override
+    public void reset(int x, int y, int pressure) {
+        mX.reset(x);
+        mY.reset(y);
+        mPressure.reset(pressure);
+    }
+
+    @Override
+    public void update(int x, int y, int pressure) {
+        mX.update(x);
+        mY.update(y);
+        mPressure.update(pressure);
+    }
+
+    @Override
+    public int getX() {
+        return Math.round(mX.position);
+    }
+
+    @Override
+    public int getY() {
+        return Math.round(mY.position);
+    }
+
+    @Override
+    public int getPressure() {
+        return Math.round(mPressure.position);
+    }
+
+    @Override
+    public float getVelocityX() {
+        return mX.velocity;
+    }
+
+    @Override
+    public float getVelocityY() {
+        return mY.velocity;
+    }
+
+    private static class Axis {
+        private final float q, r;
+        public float position, velocity;
+        // Covariance of the position/velocity estimate.
+        private float p00, p01, p11;
+
+        public Axis(float processNoise, float measurementNoise) {
+            q = processNoise;
+            r = measurementNoise;
+        }
+
+        public void reset(float value) {
+            position = value;
+            velocity = 0;
+            p00 = r;
+            p01 = 0;
+            p11 = r;
+        }
+
+        public void update(float measurement) {
+            // Predict one sample interval ahead.
+            position += velocity;
+            p00 += 2 * p01 + p11 + q / 4;
+            p01 += p11 + q / 2;
+            p11 += q;
+
+            // Correct with the measurement.
+            float s = p00 + r;
+            float k0 = p00 / s;
+            float k1 = p01 / s;
+            float innovation = measurement - position;
+            position += k0 * innovation;
+            velocity += k1 * innovation;
+            p11 -= k1 * p01;
+            p01 -= k0 * p01;
+            p00 -= k0 * p00;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/*******************************************************************************
+ Copyright © 2014 Kent Displays, Inc.
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ******************************************************************************/
+
+package com.improvelectronics.sync.android;
+
+/**
+ * One Euro filter (Casiez et al. 2012). A low pass filter whose cutoff frequency rises with the speed of the stylus, so
+ * slow writing is smoothed heavily while fast strokes keep little lag.
+ */
+public class OneEuroSmoothingFilter implements SmoothingFilter {
+
+    // Samples per second of the digitizer.
+    private final float mSampleRate;
+    private final float mMinCutoff;
+    private final float mBeta;
+    private final float mDerivativeCutoff;
+
+    private float mX, mY, mPressure;
+    private float mVelocityX, mVelocityY;
+    private float mSpeed;
+
+    /**
+     * Creates a filter with defaults tuned for the Boogie Board Sync digitizer.
+     */
+    public OneEuroSmoothingFilter() {
+        this(FilterConfig.DEFAULT);
+    }
+
+    /**
+     * Creates a filter with defaults tuned for the Boogie Board Sync digitizer running at the sample rate of a
+     * configuration.
+     *
+     * @param config configuration providing {@link FilterConfig#getMsPerSample()}
+     */
+    public OneEuroSmoothingFilter(FilterConfig config) {
+        this(config, 3.0f, 0.005f, 1.0f);
+    }
+
+    /**
+     * @param minCutoff        cutoff frequency in Hz used when the stylus is not moving
+     * @param beta             increase of the cutoff frequency per digitizer unit per second of speed
+     * @param derivativeCutoff cutoff frequency in Hz used to smooth the speed estimate
+     */
+    public OneEuroSmoothingFilter(float minCutoff, float beta, float derivativeCutoff) {
+        this(FilterConfig.DEFAULT, minCutoff, beta, derivativeCutoff);
+    }
+
+    /**
+     * @param config           configuration providing {@link FilterConfig#getMsPerSample()}
+     * @param minCutoff        cutoff frequency in Hz used when the stylus is not moving
+     * @param beta             increase of the cutoff frequency per digitizer unit per second of speed
+     * @param derivativeCutoff cutoff frequency in Hz used to smooth the speed estimate
+     */
+    public OneEuroSmoothingFilter(FilterConfig config, float minCutoff, float beta, float derivativeCutoff) {
+        mSampleRate = 1000.0f / config.getMsPerSample();
+        mMinCutoff = minCutoff;
+        mBeta = beta;
+        mDerivativeCutoff = derivativeCutoff;
+    }
+
+    @Override
+    public void reset(int x, int y, int pressure) {
+        mX = x;
+        mY = y;
+        mPressure = pressure;
+        mVelocityX = mVelocityY = 0;
+        mSpeed = 0;
+    }
+
+    @Override
+    public void update(int x, int y, int pressure) {
+        // Smooth the speed of the reference coordinate in digitizer units per second.
+        float dx = (x - mX) * mSampleRate;
+        float dy = (y - mY) * mSampleRate;
+        mSpeed += alpha(mDerivativeCutoff) * ((float) Math.sqrt(dx * dx + dy * dy) - mSpeed);
+
+        // Filter position with a cutoff that follows the speed.
+        float a = alpha(mMinCutoff + mBeta * mSpeed);
+        mVelocityX = a * (x - mX);
+        mVelocityY = a * (y - mY);
+        mX += mVelocityX;
+        mY += mVelocityY;
+        mPressure += alpha(mMinCutoff) * (pressure - mPressure);
+    }
+
+    private float alpha(float cutoff) {
+        float tau = 1.0f / (2.0f * (float) Math.PI * cutoff);
+        return 1.0f / (1.0f + tau * mSampleRate);
+    }
+
+    @Override
+    public int getX() {
+        return Math.round(mX);
+    }
+
+    @Override
+    public int getY() {
+        return Math.round(mY);
+    }
+
+    @Override
+    public int getPressure() {
+        return Math.round(mPressure);
+    }
+
+    @Override
+    public float getVelocityX() {
+        return mVelocityX;
+    }
+
+    @Override
+    public float getVelocityY() {
+        return mVelocityY;
+    }
+}
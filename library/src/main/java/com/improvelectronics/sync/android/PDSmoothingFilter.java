@@ -0,0 +1,117 @@
+/*******************************************************************************
+ Copyright © 2014 Kent Displays, Inc.
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ******************************************************************************/
+
+package com.improvelectronics.sync.android;
+
+/**
+ * Proportional and derivative controller that pulls a virtual pen mass towards the digitizer coordinates. This is the
+ * default smoothing filter and uses fixed point math with 13 fractional bits.
+ */
+public class PDSmoothingFilter implements SmoothingFilter {
+
+    // Dynamic filter Proportional and Derivative controller gains
+    // (includes effects of mass and sample time (K*T/mass)).
+    private int mProportionalGain;
+    private int mDerivativeGain;
+
+    private int mX, mY, mPressure;
+    private int mVelocityX, mVelocityY, mVelocityPressure;
+
+    /**
+     * Creates a filter with the gains of {@link FilterConfig#DEFAULT}.
+     */
+    public PDSmoothingFilter() {
+        this(FilterConfig.DEFAULT.getProportionalGain(), FilterConfig.DEFAULT.getDerivativeGain());
+    }
+
+    /**
+     * @param proportionalGain proportional gain with 13 fractional bits (8192 = 1.0)
+     * @param derivativeGain   derivative gain with 13 fractional bits (8192 = 1.0)
+     */
+    public PDSmoothingFilter(int proportionalGain, int derivativeGain) {
+        setGains(proportionalGain, derivativeGain);
+    }
+
+    /**
+     * Sets the controller gains, should only be changed between traces.
+     *
+     * @param proportionalGain proportional gain with 13 fractional bits (8192 = 1.0)
+     * @param derivativeGain   derivative gain with 13 fractional bits (8192 = 1.0)
+     */
+    public void setGains(int proportionalGain, int derivativeGain) {
+        mProportionalGain = proportionalGain;
+        mDerivativeGain = derivativeGain;
+    }
+
+    @Override
+    public void reset(int x, int y, int pressure) {
+        mX = x;
+        mY = y;
+        mPressure = pressure;
+        mVelocityX = mVelocityY = mVelocityPressure = 0;
+    }
+
+    @Override
+    public void update(int x, int y, int pressure) {
+        int ax, ay, ap;
+
+        // Calculate 8192 (= 2^13) x acceleration.
+        ax = mProportionalGain * (x - mX) - mDerivativeGain * mVelocityX;
+        ay = mProportionalGain * (y - mY) - mDerivativeGain * mVelocityY;
+        ap = mProportionalGain * (pressure - mPressure) - mDerivativeGain * mVelocityPressure;
+
+        // Calculate new position.
+        mX += mVelocityX;
+        mY += mVelocityY;
+        mPressure += mVelocityPressure;
+
+        // Calculate new velocity.
+        mVelocityX = ((mVelocityX << 13) + ax) >> 13;
+        mVelocityY = ((mVelocityY << 13) + ay) >> 13;
+        mVelocityPressure = ((mVelocityPressure << 13) + ap) >> 13;
+    }
+
+    @Override
+    public int getX() {
+        return mX;
+    }
+
+    @Override
+    public int getY() {
+        return mY;
+    }
+
+    @Override
+    public int getPressure() {
+        return mPressure;
+    }
+
+    @Override
+    public float getVelocityX() {
+        return mVelocityX;
+    }
+
+    @Override
+    public float getVelocityY() {
+        return mVelocityY;
+    }
+}
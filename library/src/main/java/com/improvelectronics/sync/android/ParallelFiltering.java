@@ -0,0 +1,149 @@
+/*******************************************************************************
+ Copyright © 2014 Kent Displays, Inc.
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ******************************************************************************/
+
+package com.improvelectronics.sync.android;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Re-filters recorded sessions of packed samples (see {@link Filtering#SAMPLE_SIZE}) in parallel. Traces are independent
+ * between pen up events, so the recording is split at pen up boundaries and groups of traces are filtered concurrently,
+ * each by its own {@link Filtering} instance seeded at the start of its first trace. The segments written are identical
+ * to filtering the whole recording sequentially with a new {@link Filtering}.
+ */
+public class ParallelFiltering {
+
+    /**
+     * Creates a new smoothing filter for every group of traces that is filtered concurrently.
+     */
+    public interface SmoothingFilterFactory {
+        public SmoothingFilter createSmoothingFilter();
+    }
+
+    // Switch states.
+    private static final int TSW_FLAG = 0x01;
+    private static final int RDY_FLAG = 0x01 << 2;
+
+    // Traces are grouped until a task has at least this many samples to filter.
+    private static final int MIN_SAMPLES_PER_TASK = 4096;
+
+    private final ExecutorService mExecutor;
+    private final FilterConfig mConfig;
+    private final SmoothingFilterFactory mFactory;
+
+    /**
+     * Creates a processor that filters with {@link PDSmoothingFilter}s using the gains of the configuration.
+     *
+     * @param executor executor the traces are filtered on, for example a ForkJoinPool when running off device
+     * @param config   parameters of the filter
+     */
+    public ParallelFiltering(ExecutorService executor, final FilterConfig config) {
+        this(executor, config, new SmoothingFilterFactory() {
+            @Override
+            public SmoothingFilter createSmoothingFilter() {
+                return new PDSmoothingFilter(config.getProportionalGain(), config.getDerivativeGain());
+            }
+        });
+    }
+
+    /**
+     * @param executor executor the traces are filtered on, for example a ForkJoinPool when running off device
+     * @param config   parameters of the filter
+     * @param factory  creates the smoothing filter used by each task
+     */
+    public ParallelFiltering(ExecutorService executor, FilterConfig config, SmoothingFilterFactory factory) {
+        mExecutor = executor;
+        mConfig = config;
+        mFactory = factory;
+    }
+
+    /**
+     * Filters a recorded session and writes the emitted segments in recording order, see
+     * {@link Filtering#filterSamples(int[], int, int, float[], int)}.
+     *
+     * @param samples   packed samples
+     * @param offset    index in samples of the first sample
+     * @param count     number of samples to filter
+     * @param out       buffer that must hold at least count * {@link Filtering#MAX_SEGMENTS_PER_SAMPLE} segments past outOffset
+     * @param outOffset index in out to write the first segment at
+     * @return number of segments written
+     * @throws InterruptedException if interrupted while waiting for the tasks to finish
+     */
+    public int filterSamples(int[] samples, int offset, int count, float[] out, int outOffset) throws InterruptedException {
+        if (out.length - outOffset < count * Filtering.MAX_SEGMENTS_PER_SAMPLE * Filtering.SEGMENT_SIZE) {
+            throw new IllegalArgumentException("output buffer too small for " + count + " samples");
+        }
+
+        List<Future<float[]>> futures = new ArrayList<Future<float[]>>();
+        int end = offset + count * Filtering.SAMPLE_SIZE;
+        int taskStart = -1;
+        boolean contact = false;
+        for (int i = offset; i < end; i += Filtering.SAMPLE_SIZE) {
+            boolean sampleContact = (samples[i + 3] & (RDY_FLAG + TSW_FLAG)) == (RDY_FLAG + TSW_FLAG);
+
+            // A trace starts with the first contact after the stylus was up.
+            if (sampleContact && !contact && taskStart < 0) taskStart = i;
+
+            // A trace ends with the first sample without contact, which is filtered as part of it.
+            if (!sampleContact && contact && (i - taskStart) / Filtering.SAMPLE_SIZE + 1 >= MIN_SAMPLES_PER_TASK) {
+                futures.add(submit(samples, taskStart, i + Filtering.SAMPLE_SIZE));
+                taskStart = -1;
+            }
+            contact = sampleContact;
+        }
+        if (taskStart >= 0) futures.add(submit(samples, taskStart, end));
+
+        int segments = 0;
+        try {
+            for (Future<float[]> future : futures) {
+                float[] result = future.get();
+                int length = result.length;
+                System.arraycopy(result, 0, out, outOffset + segments * Filtering.SEGMENT_SIZE, length);
+                segments += length / Filtering.SEGMENT_SIZE;
+            }
+        } catch (ExecutionException e) {
+            throw new RuntimeException("filtering task failed", e.getCause());
+        } finally {
+            for (Future<float[]> future : futures) future.cancel(true);
+        }
+        return segments;
+    }
+
+    private Future<float[]> submit(final int[] samples, final int start, final int end) {
+        return mExecutor.submit(new Callable<float[]>() {
+            @Override
+            public float[] call() {
+                int count = (end - start) / Filtering.SAMPLE_SIZE;
+                float[] segments = new float[count * Filtering.MAX_SEGMENTS_PER_SAMPLE * Filtering.SEGMENT_SIZE];
+                Filtering filtering = new Filtering(mConfig, mFactory.createSmoothingFilter());
+                int written = filtering.filterSamples(samples, start, count, segments, 0);
+                return Arrays.copyOf(segments, written * Filtering.SEGMENT_SIZE);
+            }
+        });
+    }
+}
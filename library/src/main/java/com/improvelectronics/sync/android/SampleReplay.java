@@ -0,0 +1,81 @@
+/*******************************************************************************
+ Copyright © 2014 Kent Displays, Inc.
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ******************************************************************************/
+
+package com.improvelectronics.sync.android;
+
+import java.io.IOException;
+
+/**
+ * Filters packed samples, for example read from a {@link SyncJournal}, for the document writers and passes the segments
+ * and the lifts of the stylus on to a target.
+ */
+class SampleReplay {
+
+    interface Target {
+
+        /**
+         * Called with the segments drawn by a sample.
+         */
+        void onSegments(float[] segments, int offset, int count) throws IOException;
+
+        /**
+         * Called once when the stylus was lifted after drawing a trace.
+         */
+        void onPenUp() throws IOException;
+    }
+
+    private final Target mTarget;
+    private final Filtering mFiltering = new Filtering();
+    private final float[] mSegments = new float[Filtering.MAX_SEGMENTS_PER_SAMPLE * Filtering.SEGMENT_SIZE];
+    private boolean mInTrace;
+
+    SampleReplay(Target target) {
+        mTarget = target;
+    }
+
+    /**
+     * Filters samples of {@link Filtering#SAMPLE_SIZE} ints (x, y, pressure, flags).
+     */
+    void replay(int[] samples, int offset, int count) throws IOException {
+        for (int i = 0; i < count; i++) {
+            int index = offset + i * Filtering.SAMPLE_SIZE;
+            int segments = mFiltering.filterSample(samples[index], samples[index + 1], samples[index + 2],
+                    samples[index + 3], mSegments, 0);
+            if (segments > 0) mTarget.onSegments(mSegments, 0, segments);
+
+            if (mFiltering.getPathState() != Filtering.PathState.NO_POINTS) {
+                mInTrace = true;
+            } else if (mInTrace) {
+                mInTrace = false;
+                mTarget.onPenUp();
+            }
+        }
+    }
+
+    /**
+     * Drops the trace being filtered without calling the target.
+     */
+    void reset() {
+        mFiltering.reset();
+        mInTrace = false;
+    }
+}
@@ -0,0 +1,59 @@
+/*******************************************************************************
+ Copyright © 2014 Kent Displays, Inc.
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ******************************************************************************/
+
+package com.improvelectronics.sync.android;
+
+/**
+ * Dynamic filter that smooths the raw digitizer coordinates of a trace before {@link Filtering} decides which segments to
+ * draw. A filter instance holds the state of a single trace and is seeded with {@link #reset(int, int, int)} at every pen
+ * down. Positions are expressed in digitizer units and velocities in digitizer units per sample interval.
+ */
+public interface SmoothingFilter {
+
+    /**
+     * Initializes the filter with the first point in a trace.
+     *
+     * @param x        digitizer x coordinate
+     * @param y        digitizer y coordinate
+     * @param pressure digitizer pressure reading
+     */
+    public void reset(int x, int y, int pressure);
+
+    /**
+     * Advances the filter by one sample interval towards a new reference coordinate.
+     *
+     * @param x        digitizer x coordinate
+     * @param y        digitizer y coordinate
+     * @param pressure digitizer pressure reading
+     */
+    public void update(int x, int y, int pressure);
+
+    public int getX();
+
+    public int getY();
+
+    public int getPressure();
+
+    public float getVelocityX();
+
+    public float getVelocityY();
+}
@@ -0,0 +1,116 @@
+/*******************************************************************************
+ Copyright © 2014 Kent Displays, Inc.
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ******************************************************************************/
+
+package com.improvelectronics.sync.android;
+
+/**
+ * Groups the segments emitted by {@link com.improvelectronics.sync.android.Filtering Filtering} into one
+ * {@link com.improvelectronics.sync.android.SyncStroke SyncStroke} per pen down to pen up, instead of a separate path
+ * for every segment.
+ */
+public class StrokeBuilder {
+
+    /**
+     * Interface definition for a callback when a stroke being built changes.
+     */
+    public interface StrokeListener {
+
+        /**
+         * Called when vertices were appended to a stroke that is still being drawn. The first call for a stroke has a
+         * first vertex index of zero.
+         *
+         * @param stroke           stroke that grew
+         * @param firstVertexIndex index of the first vertex that was added
+         */
+        public void onStrokeUpdated(SyncStroke stroke, int firstVertexIndex);
+
+        /**
+         * Called when the stylus was lifted and the stroke will not change anymore.
+         *
+         * @param stroke stroke that was completed
+         */
+        public void onStrokeCompleted(SyncStroke stroke);
+    }
+
+    private final StrokeListener mListener;
+    private SyncStroke mStroke;
+    private long mNextStrokeId = 1;
+
+    public StrokeBuilder(StrokeListener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * Appends segment records, as written by {@link Filtering#filterSamples(int[], int, int, float[], int)}, to the
+     * stroke being drawn. A new stroke is started if there is none.
+     *
+     * @param segments buffer containing segment records
+     * @param offset   index in segments of the first record
+     * @param count    number of segments to append
+     */
+    public void appendSegments(float[] segments, int offset, int count) {
+        if (count == 0) return;
+
+        int firstVertexIndex = 0;
+        if (mStroke == null) {
+            mStroke = new SyncStroke(mNextStrokeId++, System.currentTimeMillis());
+            mStroke.addVertex(segments[offset], segments[offset + 1], segments[offset + 4]);
+        } else {
+            firstVertexIndex = mStroke.getVertexCount();
+        }
+
+        int end = offset + count * Filtering.SEGMENT_SIZE;
+        for (int i = offset; i < end; i += Filtering.SEGMENT_SIZE) {
+            mStroke.addVertex(segments[i + 2], segments[i + 3], segments[i + 4]);
+        }
+
+        if (mListener != null) mListener.onStrokeUpdated(mStroke, firstVertexIndex);
+    }
+
+    /**
+     * Completes the stroke being drawn, should be called once the filter reports the stylus was lifted.
+     */
+    public void endStroke() {
+        if (mStroke == null) return;
+
+        SyncStroke stroke = mStroke;
+        mStroke = null;
+        stroke.complete(System.currentTimeMillis());
+        if (mListener != null) mListener.onStrokeCompleted(stroke);
+    }
+
+    /**
+     * Returns the stroke currently being drawn.
+     *
+     * @return stroke, null if the stylus is not down
+     */
+    public SyncStroke getCurrentStroke() {
+        return mStroke;
+    }
+
+    /**
+     * Discards the stroke being drawn without completing it.
+     */
+    public void reset() {
+        mStroke = null;
+    }
+}
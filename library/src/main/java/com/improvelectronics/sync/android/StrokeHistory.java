@@ -0,0 +1,129 @@
+/*******************************************************************************
+ Copyright © 2014 Kent Displays, Inc.
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ******************************************************************************/
+
+package com.improvelectronics.sync.android;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Stroke store with undo and redo. Every change makes a new {@link StrokeVector} that shares its structure with the
+ * previous one, so undo, redo and taking a snapshot only move references instead of copying the strokes.
+ */
+public class StrokeHistory {
+
+    /**
+     * Default number of changes that can be undone.
+     */
+    public static final int DEFAULT_MAX_UNDO_LEVELS = 100;
+
+    private StrokeVector mStrokes = StrokeVector.EMPTY;
+    private final Deque<StrokeVector> mUndo = new ArrayDeque<>();
+    private final Deque<StrokeVector> mRedo = new ArrayDeque<>();
+    private int mMaxUndoLevels = DEFAULT_MAX_UNDO_LEVELS;
+
+    /**
+     * Returns the current strokes, an immutable snapshot that later changes do not affect.
+     *
+     * @return strokes
+     */
+    public StrokeVector getStrokes() {
+        return mStrokes;
+    }
+
+    /**
+     * Appends a stroke, which can be undone. Changes that were undone can no longer be redone.
+     *
+     * @param stroke stroke to append
+     */
+    public void add(SyncStroke stroke) {
+        change(mStrokes.append(stroke));
+    }
+
+    /**
+     * Removes every stroke, which can be undone.
+     */
+    public void clear() {
+        if (!mStrokes.isEmpty()) change(StrokeVector.EMPTY);
+    }
+
+    /**
+     * Removes every stroke along with the changes that could be undone or redone.
+     */
+    public void reset() {
+        mStrokes = StrokeVector.EMPTY;
+        mUndo.clear();
+        mRedo.clear();
+    }
+
+    /**
+     * Reverts the last change.
+     *
+     * @return false if there was nothing to undo
+     */
+    public boolean undo() {
+        if (mUndo.isEmpty()) return false;
+        mRedo.push(mStrokes);
+        mStrokes = mUndo.pop();
+        return true;
+    }
+
+    /**
+     * Applies the last change that was undone again.
+     *
+     * @return false if there was nothing to redo
+     */
+    public boolean redo() {
+        if (mRedo.isEmpty()) return false;
+        mUndo.push(mStrokes);
+        mStrokes = mRedo.pop();
+        return true;
+    }
+
+    public boolean canUndo() {
+        return !mUndo.isEmpty();
+    }
+
+    public boolean canRedo() {
+        return !mRedo.isEmpty();
+    }
+
+    /**
+     * Sets how many changes can be undone, older changes are forgotten.
+     *
+     * @param levels number of changes, 0 disables undo
+     */
+    public void setMaxUndoLevels(int levels) {
+        if (levels < 0) throw new IllegalArgumentException("undo levels must not be negative");
+        mMaxUndoLevels = levels;
+        while (mUndo.size() > levels) mUndo.removeLast();
+    }
+
+    private void change(StrokeVector strokes) {
+        if (mMaxUndoLevels > 0) {
+            mUndo.push(mStrokes);
+            if (mUndo.size() > mMaxUndoLevels) mUndo.removeLast();
+        }
+        mRedo.clear();
+        mStrokes = strokes;
+    }
+}
@@ -0,0 +1,209 @@
+/*******************************************************************************
+ Copyright © 2014 Kent Displays, Inc.
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ******************************************************************************/
+
+package com.improvelectronics.sync.android;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Uniform grid over the writing area of the Boogie Board Sync that indexes completed strokes by the bounding box of
+ * their ink, so strokes in a viewport or under the eraser can be found without scanning every stroke. A stroke is
+ * listed in every cell its bounding box overlaps, and strokes reaching past the writing area are kept in the edge cells.
+ */
+public class StrokeIndex {
+
+    /**
+     * Default width and height of a cell in digitizer units (about 5 mm).
+     */
+    public static final float DEFAULT_CELL_SIZE = 512.0f;
+
+    private static final Comparator<SyncStroke> ID_ORDER = new Comparator<SyncStroke>() {
+        @Override
+        public int compare(SyncStroke lhs, SyncStroke rhs) {
+            return lhs.getId() < rhs.getId() ? -1 : (lhs.getId() == rhs.getId() ? 0 : 1);
+        }
+    };
+
+    private final float mCellSize;
+    private final int mColumns;
+    private final int mRows;
+    private final List<SyncStroke>[] mCells;
+    private int mSize;
+
+    public StrokeIndex() {
+        this(DEFAULT_CELL_SIZE);
+    }
+
+    /**
+     * @param cellSize width and height of a cell in digitizer units
+     */
+    public StrokeIndex(float cellSize) {
+        if (cellSize <= 0) throw new IllegalArgumentException("cell size must be positive");
+        mCellSize = cellSize;
+        mColumns = (int) Math.ceil(SyncCaptureReport.MAX_X / cellSize);
+        mRows = (int) Math.ceil(SyncCaptureReport.MAX_Y / cellSize);
+        mCells = newCells(mColumns * mRows);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<SyncStroke>[] newCells(int count) {
+        return (List<SyncStroke>[]) new List<?>[count];
+    }
+
+    /**
+     * Adds a stroke, which must not change while it is in the index.
+     *
+     * @param stroke stroke with at least one vertex
+     */
+    public void add(SyncStroke stroke) {
+        if (stroke.getVertexCount() == 0) return;
+        int left = column(stroke.getLeft()), right = column(stroke.getRight());
+        int top = row(stroke.getTop()), bottom = row(stroke.getBottom());
+        for (int row = top; row <= bottom; row++) {
+            for (int column = left; column <= right; column++) {
+                int cell = row * mColumns + column;
+                if (mCells[cell] == null) mCells[cell] = new ArrayList<SyncStroke>(4);
+                mCells[cell].add(stroke);
+            }
+        }
+        mSize++;
+    }
+
+    /**
+     * Removes a stroke that was added before.
+     *
+     * @param stroke stroke to remove
+     * @return false if the stroke was not in the index
+     */
+    public boolean remove(SyncStroke stroke) {
+        if (stroke.getVertexCount() == 0) return false;
+        boolean removed = false;
+        int left = column(stroke.getLeft()), right = column(stroke.getRight());
+        int top = row(stroke.getTop()), bottom = row(stroke.getBottom());
+        for (int row = top; row <= bottom; row++) {
+            for (int column = left; column <= right; column++) {
+                List<SyncStroke> cell = mCells[row * mColumns + column];
+                if (cell != null && cell.remove(stroke)) removed = true;
+            }
+        }
+        if (removed) mSize--;
+        return removed;
+    }
+
+    public void clear() {
+        for (int i = 0; i < mCells.length; i++) mCells[i] = null;
+        mSize = 0;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * Finds the strokes whose bounding box intersects a rectangle.
+     *
+     * @param out receives the strokes in the order they were drawn
+     * @return out
+     */
+    public List<SyncStroke> query(float left, float top, float right, float bottom, List<SyncStroke> out) {
+        int start = out.size();
+        int firstColumn = column(left), lastColumn = column(right);
+        int firstRow = row(top), lastRow = row(bottom);
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                List<SyncStroke> cell = mCells[row * mColumns + column];
+                if (cell == null) continue;
+                for (int i = 0; i < cell.size(); i++) {
+                    SyncStroke stroke = cell.get(i);
+                    if (stroke.getLeft() > right || stroke.getRight() < left || stroke.getTop() > bottom
+                            || stroke.getBottom() < top) continue;
+
+                    // Report a stroke only from the cell holding the corner of its overlap with the rectangle, so it
+                    // is found once without remembering which strokes were seen.
+                    if (column(Math.max(stroke.getLeft(), left)) == column && row(Math.max(stroke.getTop(), top)) == row) {
+                        out.add(stroke);
+                    }
+                }
+            }
+        }
+        Collections.sort(out.subList(start, out.size()), ID_ORDER);
+        return out;
+    }
+
+    public List<SyncStroke> query(float left, float top, float right, float bottom) {
+        return query(left, top, right, bottom, new ArrayList<SyncStroke>());
+    }
+
+    /**
+     * Finds the strokes whose ink passes within a distance of a point, for example under an eraser.
+     *
+     * @param x      x coordinate in digitizer units
+     * @param y      y coordinate in digitizer units
+     * @param radius distance from the point, 0 to only find ink covering it
+     * @param out    receives the strokes in the order they were drawn
+     * @return out
+     */
+    public List<SyncStroke> hitTest(float x, float y, float radius, List<SyncStroke> out) {
+        int start = out.size();
+        query(x - radius, y - radius, x + radius, y + radius, out);
+        for (int i = out.size() - 1; i >= start; i--) {
+            if (!hits(out.get(i), x, y, radius)) out.remove(i);
+        }
+        return out;
+    }
+
+    private static boolean hits(SyncStroke stroke, float x, float y, float radius) {
+        int count = stroke.getVertexCount();
+        for (int i = 0; i < count; i++) {
+            float x0 = stroke.getX(i), y0 = stroke.getY(i);
+            float x1 = x0, y1 = y0;
+            if (i + 1 < count) {
+                x1 = stroke.getX(i + 1);
+                y1 = stroke.getY(i + 1);
+            } else if (count > 1) {
+                break;
+            }
+
+            // Closest point on the segment to (x, y).
+            float dx = x1 - x0, dy = y1 - y0;
+            float lengthSquared = dx * dx + dy * dy;
+            float t = lengthSquared == 0 ? 0 : ((x - x0) * dx + (y - y0) * dy) / lengthSquared;
+            t = Math.max(0, Math.min(1, t));
+            float cx = x0 + t * dx - x, cy = y0 + t * dy - y;
+
+            float reach = radius + Math.max(stroke.getWidth(i), stroke.getWidth(Math.min(i + 1, count - 1))) / 2;
+            if (cx * cx + cy * cy <= reach * reach) return true;
+        }
+        return false;
+    }
+
+    private int column(float x) {
+        return Math.max(0, Math.min(mColumns - 1, (int) Math.floor(x / mCellSize)));
+    }
+
+    private int row(float y) {
+        return Math.max(0, Math.min(mRows - 1, (int) Math.floor(y / mCellSize)));
+    }
+}
@@ -0,0 +1,169 @@
+/*******************************************************************************
+ Copyright © 2014 Kent Displays, Inc.
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ******************************************************************************/
+
+package com.improvelectronics.sync.android;
+
+import java.util.Arrays;
+
+/**
+ * Closed outline polygon around the ink of a {@link SyncStroke}, following the width of every vertex with round caps
+ * at both ends and round joins on the outside of every turn. Filling the polygon with the non-zero winding rule draws
+ * the whole stroke at once instead of stroking one path per segment. Points are stored as x and y pairs in digitizer
+ * units.
+ */
+public class StrokeOutline {
+
+    /**
+     * Largest distance in digitizer units between a round cap or join and the arc approximating it.
+     */
+    public static final float ARC_TOLERANCE = 0.5f;
+
+    private static final int MAX_ARC_STEPS = 64;
+
+    private final float[] mPoints;
+    private final int mPointCount;
+
+    private StrokeOutline(float[] points, int pointCount) {
+        mPoints = points;
+        mPointCount = pointCount;
+    }
+
+    /**
+     * Tessellates the outline of a stroke. {@link SyncStroke#getOutline()} caches the result with the stroke and should
+     * be preferred.
+     *
+     * @param stroke stroke to outline
+     * @return outline, with no points if the stroke has no vertices
+     */
+    public static StrokeOutline create(SyncStroke stroke) {
+        // Drop consecutive duplicate vertices, they have no direction.
+        int count = stroke.getVertexCount();
+        float[] x = new float[count], y = new float[count], r = new float[count];
+        int n = 0;
+        for (int i = 0; i < count; i++) {
+            if (n > 0 && x[n - 1] == stroke.getX(i) && y[n - 1] == stroke.getY(i)) continue;
+            x[n] = stroke.getX(i);
+            y[n] = stroke.getY(i);
+            r[n] = stroke.getWidth(i) / 2;
+            n++;
+        }
+
+        Builder builder = new Builder(n * 4 + 16);
+        if (n == 1) {
+            builder.add(x[0] + r[0], y[0]);
+            builder.arc(x[0], y[0], r[0], 1, 0, (float) (-2 * Math.PI));
+        } else if (n > 1) {
+            // Left hand normal of every segment.
+            float[] nx = new float[n - 1], ny = new float[n - 1];
+            for (int i = 0; i < n - 1; i++) {
+                float dx = x[i + 1] - x[i], dy = y[i + 1] - y[i];
+                float length = (float) Math.sqrt(dx * dx + dy * dy);
+                nx[i] = -dy / length;
+                ny[i] = dx / length;
+            }
+
+            // Forward along the left side, around the end cap, back along the right side and around the start cap.
+            builder.add(x[0] + r[0] * nx[0], y[0] + r[0] * ny[0]);
+            for (int i = 1; i < n - 1; i++) {
+                builder.join(x[i], y[i], r[i], nx[i - 1], ny[i - 1], nx[i], ny[i]);
+            }
+            int last = n - 1;
+            builder.add(x[last] + r[last] * nx[last - 1], y[last] + r[last] * ny[last - 1]);
+            builder.arc(x[last], y[last], r[last], nx[last - 1], ny[last - 1], (float) -Math.PI);
+            for (int i = n - 2; i > 0; i--) {
+                builder.join(x[i], y[i], r[i], -nx[i], -ny[i], -nx[i - 1], -ny[i - 1]);
+            }
+            builder.add(x[0] - r[0] * nx[0], y[0] - r[0] * ny[0]);
+            builder.arc(x[0], y[0], r[0], -nx[0], -ny[0], (float) -Math.PI);
+        }
+        return new StrokeOutline(builder.points, builder.size / 2);
+    }
+
+    public int getPointCount() {
+        return mPointCount;
+    }
+
+    public float getX(int index) {
+        return mPoints[index * 2];
+    }
+
+    public float getY(int index) {
+        return mPoints[index * 2 + 1];
+    }
+
+    /**
+     * Returns the backing point array. Only the first {@link #getPointCount()} * 2 values are valid and the array must
+     * not be modified.
+     *
+     * @return points
+     */
+    public float[] getPoints() {
+        return mPoints;
+    }
+
+    private static class Builder {
+        public float[] points;
+        public int size;
+
+        public Builder(int capacity) {
+            points = new float[capacity * 2];
+        }
+
+        public void add(float x, float y) {
+            if (size + 2 > points.length) points = Arrays.copyOf(points, points.length * 2);
+            points[size++] = x;
+            points[size++] = y;
+        }
+
+        /**
+         * Joins two segments on one side of a vertex, going from the normal of the incoming segment to the normal of
+         * the outgoing one.
+         */
+        public void join(float x, float y, float r, float ax, float ay, float bx, float by) {
+            add(x + r * ax, y + r * ay);
+            float cross = ax * by - ay * bx;
+            if (cross < 0) {
+                // Outside of the turn, round it off.
+                arc(x, y, r, ax, ay, (float) Math.atan2(cross, ax * bx + ay * by));
+            } else {
+                // Inside of the turn, passing through the vertex keeps the winding of the overlap non-zero.
+                if (cross > 0) add(x, y);
+                add(x + r * bx, y + r * by);
+            }
+        }
+
+        /**
+         * Adds an arc around a center, starting after the point in direction a and sweeping the given angle.
+         */
+        public void arc(float x, float y, float r, float ax, float ay, float angle) {
+            // Small enough steps to stay within the tolerance, a quarter turn at most for tiny radii.
+            double step = r > ARC_TOLERANCE ? 2 * Math.acos(1 - ARC_TOLERANCE / r) : Math.PI / 2;
+            int steps = Math.max(1, Math.min(MAX_ARC_STEPS, (int) Math.ceil(Math.abs(angle) / step)));
+
+            double start = Math.atan2(ay, ax);
+            for (int i = 1; i <= steps; i++) {
+                double a = start + angle * i / steps;
+                add(x + r * (float) Math.cos(a), y + r * (float) Math.sin(a));
+            }
+        }
+    }
+}
@@ -0,0 +1,198 @@
+/*******************************************************************************
+ Copyright © 2014 Kent Displays, Inc.
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ******************************************************************************/
+
+package com.improvelectronics.sync.android;
+
+import android.util.Log;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded pool of low priority worker threads that runs the registered {@link StrokeProcessor}s on completed strokes.
+ * Every processor runs as its own task so the processors of a stroke run concurrently, and results are published to
+ * the listeners on a result executor together with the id of the stroke. When more tasks are waiting than the pool
+ * allows, new tasks are dropped instead of slowing down the caller.
+ */
+public class StrokeProcessingPool {
+
+    private static final String TAG = StrokeProcessingPool.class.getSimpleName();
+
+    // Idle worker threads are stopped after this many seconds.
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    /**
+     * Processor tessellating the outline of a stroke, which is cached with the stroke for later drawing.
+     */
+    public static final StrokeProcessor<StrokeOutline> OUTLINE = new StrokeProcessor<StrokeOutline>() {
+        @Override
+        public StrokeOutline process(SyncStroke stroke) {
+            return stroke.getOutline();
+        }
+    };
+
+    private final ThreadPoolExecutor mExecutor;
+    private final Executor mResultExecutor;
+    private final List<StrokeProcessor<?>> mProcessors = new CopyOnWriteArrayList<StrokeProcessor<?>>();
+    private final List<SyncStrokeProcessingListener> mListeners = new CopyOnWriteArrayList<SyncStrokeProcessingListener>();
+
+    /**
+     * Creates a pool using all but one of the available processors, leaving one for the live ink.
+     *
+     * @param resultExecutor executor the listeners are called on
+     */
+    public StrokeProcessingPool(Executor resultExecutor) {
+        this(Math.max(1, Runtime.getRuntime().availableProcessors() - 1), 256, resultExecutor);
+    }
+
+    /**
+     * @param threads        most worker threads running at once
+     * @param maxQueuedTasks most tasks waiting for a worker before new ones are dropped
+     * @param resultExecutor executor the listeners are called on
+     */
+    public StrokeProcessingPool(int threads, int maxQueuedTasks, Executor resultExecutor) {
+        if (threads < 1) throw new IllegalArgumentException("need at least one thread");
+        mResultExecutor = resultExecutor;
+        mExecutor = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(maxQueuedTasks), new WorkerThreadFactory());
+        mExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Creates a processor fitting cubic Béziers to strokes.
+     *
+     * @param maxError largest distance in digitizer units a vertex may be from the curves
+     * @return processor
+     */
+    public static StrokeProcessor<BezierStroke> curveFitting(float maxError) {
+        final CurveFitter fitter = new CurveFitter(maxError);
+        return new StrokeProcessor<BezierStroke>() {
+            @Override
+            public BezierStroke process(SyncStroke stroke) {
+                return fitter.fit(stroke);
+            }
+        };
+    }
+
+    /**
+     * Creates a processor simplifying strokes into new strokes.
+     *
+     * @param tolerance largest distance in digitizer units a removed vertex may be from the simplified stroke
+     * @return processor
+     */
+    public static StrokeProcessor<SyncStroke> simplification(final float tolerance) {
+        return new StrokeProcessor<SyncStroke>() {
+            @Override
+            public SyncStroke process(SyncStroke stroke) {
+                return StrokeSimplifier.simplify(stroke, tolerance);
+            }
+        };
+    }
+
+    public boolean addProcessor(StrokeProcessor<?> processor) {
+        return mProcessors.contains(processor) ? false : mProcessors.add(processor);
+    }
+
+    public boolean removeProcessor(StrokeProcessor<?> processor) {
+        return mProcessors.remove(processor);
+    }
+
+    public boolean hasProcessors() {
+        return !mProcessors.isEmpty();
+    }
+
+    public boolean addListener(SyncStrokeProcessingListener listener) {
+        return mListeners.contains(listener) ? false : mListeners.add(listener);
+    }
+
+    public boolean removeListener(SyncStrokeProcessingListener listener) {
+        return mListeners.remove(listener);
+    }
+
+    /**
+     * Queues a completed stroke for every registered processor.
+     *
+     * @param stroke completed stroke, must not be modified afterwards
+     */
+    public void submit(final SyncStroke stroke) {
+        for (final StrokeProcessor<?> processor : mProcessors) {
+            try {
+                mExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        process(stroke, processor);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                Log.w(TAG, "dropped stroke " + stroke.getId() + ", too many strokes waiting to be processed");
+                return;
+            }
+        }
+    }
+
+    /**
+     * Stops the worker threads, tasks that are still waiting are discarded.
+     */
+    public void shutdown() {
+        mExecutor.shutdownNow();
+    }
+
+    private void process(SyncStroke stroke, final StrokeProcessor<?> processor) {
+        final Object result;
+        try {
+            result = processor.process(stroke);
+        } catch (RuntimeException e) {
+            Log.e(TAG, "processing stroke " + stroke.getId() + " failed", e);
+            return;
+        }
+        if (result == null) return;
+
+        final long strokeId = stroke.getId();
+        mResultExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                for (SyncStrokeProcessingListener listener : mListeners) {
+                    listener.onStrokeProcessed(strokeId, processor, result);
+                }
+            }
+        });
+    }
+
+    private static class WorkerThreadFactory implements ThreadFactory {
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, TAG + "-" + mCount.incrementAndGet());
+            thread.setPriority(Thread.MIN_PRIORITY);
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
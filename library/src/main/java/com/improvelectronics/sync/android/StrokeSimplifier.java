@@ -0,0 +1,204 @@
+/*******************************************************************************
+ Copyright © 2014 Kent Displays, Inc.
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ******************************************************************************/
+
+package com.improvelectronics.sync.android;
+
+import java.util.Arrays;
+
+/**
+ * Online Ramer-Douglas-Peucker simplification of strokes, placed between a {@link StrokeBuilder} and its consumer. While
+ * a stroke is drawn, vertices are held in a bounded window and a vertex is emitted as soon as a later vertex can no longer
+ * be reached from the last emitted one without deviating more than the tolerance. Emitted vertices are never changed.
+ * Once the stroke is completed, a full Ramer-Douglas-Peucker pass over all of its vertices is published as a new stroke
+ * with the same identifier.
+ */
+public class StrokeSimplifier implements StrokeBuilder.StrokeListener {
+
+    // Most raw vertices held back before one is emitted regardless of the tolerance.
+    private static final int MAX_WINDOW = 32;
+
+    private final StrokeBuilder.StrokeListener mListener;
+    private float mTolerance;
+
+    // State of the stroke being simplified.
+    private SyncStroke mStroke;
+    private float mStrokeTolerance;
+    private int mAnchor;
+
+    /**
+     * @param tolerance largest distance in digitizer units a removed vertex may be from the simplified stroke
+     * @param listener  receives the simplified strokes
+     */
+    public StrokeSimplifier(float tolerance, StrokeBuilder.StrokeListener listener) {
+        mTolerance = tolerance;
+        mListener = listener;
+    }
+
+    /**
+     * Sets the tolerance in digitizer units, a stroke being drawn keeps the tolerance it was started with.
+     *
+     * @param tolerance largest distance a removed vertex may be from the simplified stroke
+     */
+    public void setTolerance(float tolerance) {
+        mTolerance = tolerance;
+    }
+
+    public float getTolerance() {
+        return mTolerance;
+    }
+
+    @Override
+    public void onStrokeUpdated(SyncStroke rawStroke, int firstVertexIndex) {
+        int firstEmitted = 0;
+        if (mStroke == null) {
+            mStroke = new SyncStroke(rawStroke.getId(), rawStroke.getStartTime());
+            mStrokeTolerance = mTolerance;
+            mAnchor = 0;
+            copyVertex(rawStroke, 0, mStroke);
+        } else {
+            firstEmitted = mStroke.getVertexCount();
+        }
+
+        float[] vertices = rawStroke.getVertices();
+        for (int i = Math.max(firstVertexIndex, 1); i < rawStroke.getVertexCount(); i++) {
+            if (i - mAnchor >= MAX_WINDOW || !withinTolerance(vertices, mAnchor, i, mStrokeTolerance)) {
+                // The previous vertex is needed, it is final.
+                mAnchor = i - 1;
+                copyVertex(rawStroke, mAnchor, mStroke);
+            }
+        }
+
+        if (mStroke.getVertexCount() > firstEmitted && mListener != null) {
+            mListener.onStrokeUpdated(mStroke, firstEmitted);
+        }
+    }
+
+    @Override
+    public void onStrokeCompleted(SyncStroke rawStroke) {
+        float tolerance = mStroke != null ? mStrokeTolerance : mTolerance;
+        mStroke = null;
+
+        // The streamed stroke was handed to listeners as final, so the full pass goes into a new stroke.
+        SyncStroke stroke = simplify(rawStroke, tolerance);
+        if (mListener != null) mListener.onStrokeCompleted(stroke);
+    }
+
+    /**
+     * Discards the stroke being simplified.
+     */
+    public void reset() {
+        mStroke = null;
+    }
+
+    /**
+     * Simplifies a stroke with the Ramer-Douglas-Peucker algorithm.
+     *
+     * @param stroke    stroke to simplify
+     * @param tolerance largest distance in digitizer units a removed vertex may be from the simplified stroke
+     * @return new completed stroke containing the kept vertices
+     */
+    public static SyncStroke simplify(SyncStroke stroke, float tolerance) {
+        SyncStroke simplified = new SyncStroke(stroke.getId(), stroke.getStartTime());
+        simplify(stroke, tolerance, simplified);
+        simplified.complete(stroke.getEndTime());
+        return simplified;
+    }
+
+    private static void simplify(SyncStroke stroke, float tolerance, SyncStroke out) {
+        int count = stroke.getVertexCount();
+        if (count <= 2) {
+            for (int i = 0; i < count; i++) copyVertex(stroke, i, out);
+            return;
+        }
+
+        float[] vertices = stroke.getVertices();
+        boolean[] keep = new boolean[count];
+        keep[0] = keep[count - 1] = true;
+
+        // Ranges still to be split, kept on an explicit stack instead of recursing.
+        int[] stack = new int[64];
+        int top = 0;
+        stack[top++] = 0;
+        stack[top++] = count - 1;
+        while (top > 0) {
+            int end = stack[--top];
+            int start = stack[--top];
+
+            float maxError = -1;
+            int index = -1;
+            for (int i = start + 1; i < end; i++) {
+                float error = error(vertices, start, end, i);
+                if (error > maxError) {
+                    maxError = error;
+                    index = i;
+                }
+            }
+
+            if (index >= 0 && maxError > tolerance) {
+                keep[index] = true;
+                if (top + 4 > stack.length) stack = Arrays.copyOf(stack, stack.length * 2);
+                stack[top++] = start;
+                stack[top++] = index;
+                stack[top++] = index;
+                stack[top++] = end;
+            }
+        }
+
+        for (int i = 0; i < count; i++) {
+            if (keep[i]) copyVertex(stroke, i, out);
+        }
+    }
+
+    private static boolean withinTolerance(float[] vertices, int start, int end, float tolerance) {
+        for (int i = start + 1; i < end; i++) {
+            if (error(vertices, start, end, i) > tolerance) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Deviation of a vertex from the segment between two others, the larger of its distance to the segment and the
+     * difference of its width from the interpolated width.
+     */
+    private static float error(float[] vertices, int start, int end, int index) {
+        int s = start * SyncStroke.VERTEX_SIZE, e = end * SyncStroke.VERTEX_SIZE, p = index * SyncStroke.VERTEX_SIZE;
+        float dx = vertices[e] - vertices[s];
+        float dy = vertices[e + 1] - vertices[s + 1];
+        float px = vertices[p] - vertices[s];
+        float py = vertices[p + 1] - vertices[s + 1];
+        float lengthSquared = dx * dx + dy * dy;
+
+        float t = lengthSquared > 0 ? (px * dx + py * dy) / lengthSquared : 0;
+        if (t < 0) t = 0;
+        else if (t > 1) t = 1;
+
+        float ex = px - t * dx;
+        float ey = py - t * dy;
+        float distance = (float) Math.sqrt(ex * ex + ey * ey);
+        float width = Math.abs(vertices[p + 2] - (vertices[s + 2] + t * (vertices[e + 2] - vertices[s + 2])));
+        return distance > width ? distance : width;
+    }
+
+    private static void copyVertex(SyncStroke from, int index, SyncStroke to) {
+        to.addVertex(from.getX(index), from.getY(index), from.getWidth(index));
+    }
+}
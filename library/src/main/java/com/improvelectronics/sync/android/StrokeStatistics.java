@@ -0,0 +1,131 @@
+/*******************************************************************************
+ Copyright © 2014 Kent Displays, Inc.
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ******************************************************************************/
+
+package com.improvelectronics.sync.android;
+
+/**
+ * Summary of a completed stroke: its length along the vertices, the bounding box of its ink, its duration and line
+ * widths. Lengths are in digitizer units.
+ */
+public class StrokeStatistics {
+
+    /**
+     * Processor computing the statistics of a stroke.
+     */
+    public static final StrokeProcessor<StrokeStatistics> PROCESSOR = new StrokeProcessor<StrokeStatistics>() {
+        @Override
+        public StrokeStatistics process(SyncStroke stroke) {
+            return new StrokeStatistics(stroke);
+        }
+    };
+
+    private final long mStrokeId;
+    private final int mVertexCount;
+    private final float mLength;
+    private final long mDuration;
+    private final float mLeft, mTop, mRight, mBottom;
+    private final float mMinWidth, mMaxWidth, mAverageWidth;
+
+    public StrokeStatistics(SyncStroke stroke) {
+        mStrokeId = stroke.getId();
+        mVertexCount = stroke.getVertexCount();
+        mDuration = stroke.isCompleted() ? stroke.getEndTime() - stroke.getStartTime() : 0;
+        mLeft = stroke.getLeft();
+        mTop = stroke.getTop();
+        mRight = stroke.getRight();
+        mBottom = stroke.getBottom();
+
+        float[] vertices = stroke.getVertices();
+        double length = 0, widthSum = 0;
+        float minWidth = Float.MAX_VALUE, maxWidth = 0;
+        for (int i = 0; i < mVertexCount; i++) {
+            int index = i * SyncStroke.VERTEX_SIZE;
+            if (i > 0) {
+                float dx = vertices[index] - vertices[index - SyncStroke.VERTEX_SIZE];
+                float dy = vertices[index + 1] - vertices[index + 1 - SyncStroke.VERTEX_SIZE];
+                length += Math.sqrt(dx * dx + dy * dy);
+            }
+            float width = vertices[index + 2];
+            widthSum += width;
+            if (width < minWidth) minWidth = width;
+            if (width > maxWidth) maxWidth = width;
+        }
+        mLength = (float) length;
+        mMinWidth = mVertexCount > 0 ? minWidth : 0;
+        mMaxWidth = maxWidth;
+        mAverageWidth = mVertexCount > 0 ? (float) (widthSum / mVertexCount) : 0;
+    }
+
+    public long getStrokeId() {
+        return mStrokeId;
+    }
+
+    public int getVertexCount() {
+        return mVertexCount;
+    }
+
+    /**
+     * Returns the length of the polyline through the vertices.
+     *
+     * @return length in digitizer units
+     */
+    public float getLength() {
+        return mLength;
+    }
+
+    /**
+     * Returns the time from pen down to pen up.
+     *
+     * @return duration in milliseconds
+     */
+    public long getDuration() {
+        return mDuration;
+    }
+
+    public float getLeft() {
+        return mLeft;
+    }
+
+    public float getTop() {
+        return mTop;
+    }
+
+    public float getRight() {
+        return mRight;
+    }
+
+    public float getBottom() {
+        return mBottom;
+    }
+
+    public float getMinWidth() {
+        return mMinWidth;
+    }
+
+    public float getMaxWidth() {
+        return mMaxWidth;
+    }
+
+    public float getAverageWidth() {
+        return mAverageWidth;
+    }
+}
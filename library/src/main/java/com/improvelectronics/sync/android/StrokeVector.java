@@ -0,0 +1,126 @@
+/*******************************************************************************
+ Copyright © 2014 Kent Displays, Inc.
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ******************************************************************************/
+
+package com.improvelectronics.sync.android;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * Immutable list of strokes that shares its structure with the lists it was made from. Strokes are kept in chunks of
+ * 32 in a shallow tree, so appending copies at most one chunk and one path of the tree instead of the whole list, and
+ * keeping an older version costs nothing. A vector only has final fields and never changes, so another thread reading
+ * it sees a consistent snapshot without locking; see {@link SyncStroke} for reading the strokes it holds.
+ */
+public final class StrokeVector extends AbstractList<SyncStroke> implements RandomAccess {
+
+    private static final int BITS = 5;
+    private static final int WIDTH = 1 << BITS;
+    private static final int MASK = WIDTH - 1;
+
+    /**
+     * Vector without strokes.
+     */
+    public static final StrokeVector EMPTY = new StrokeVector(0, BITS, new Object[WIDTH], new Object[0]);
+
+    private final int mSize;
+    private final int mShift;
+    private final Object[] mRoot;
+
+    // Last chunk, kept outside of the tree until it is full.
+    private final Object[] mTail;
+
+    private StrokeVector(int size, int shift, Object[] root, Object[] tail) {
+        mSize = size;
+        mShift = shift;
+        mRoot = root;
+        mTail = tail;
+    }
+
+    @Override
+    public int size() {
+        return mSize;
+    }
+
+    @Override
+    public SyncStroke get(int index) {
+        if (index < 0 || index >= mSize) throw new IndexOutOfBoundsException("index " + index + ", size " + mSize);
+        if (index >= tailOffset()) return (SyncStroke) mTail[index & MASK];
+
+        Object[] node = mRoot;
+        for (int level = mShift; level > 0; level -= BITS) {
+            node = (Object[]) node[(index >>> level) & MASK];
+        }
+        return (SyncStroke) node[index & MASK];
+    }
+
+    /**
+     * Returns a vector with a stroke appended, this vector is unchanged.
+     *
+     * @param stroke stroke to append
+     * @return new vector
+     */
+    public StrokeVector append(SyncStroke stroke) {
+        if (mSize - tailOffset() < WIDTH) {
+            Object[] tail = Arrays.copyOf(mTail, mTail.length + 1);
+            tail[mTail.length] = stroke;
+            return new StrokeVector(mSize + 1, mShift, mRoot, tail);
+        }
+
+        // The tail is full, move it into the tree and start a new one.
+        Object[] root;
+        int shift = mShift;
+        if ((mSize >>> BITS) > (1 << mShift)) {
+            root = new Object[WIDTH];
+            root[0] = mRoot;
+            root[1] = newPath(mShift, mTail);
+            shift += BITS;
+        } else {
+            root = pushTail(mShift, mRoot, mTail);
+        }
+        return new StrokeVector(mSize + 1, shift, root, new Object[]{stroke});
+    }
+
+    private int tailOffset() {
+        return mSize < WIDTH ? 0 : ((mSize - 1) >>> BITS) << BITS;
+    }
+
+    private Object[] pushTail(int level, Object[] parent, Object[] tail) {
+        int index = ((mSize - 1) >>> level) & MASK;
+        Object[] node = parent.clone();
+        if (level == BITS) {
+            node[index] = tail;
+        } else {
+            Object[] child = (Object[]) parent[index];
+            node[index] = child != null ? pushTail(level - BITS, child, tail) : newPath(level - BITS, tail);
+        }
+        return node;
+    }
+
+    private static Object[] newPath(int level, Object[] node) {
+        if (level == 0) return node;
+        Object[] path = new Object[WIDTH];
+        path[0] = newPath(level - BITS, node);
+        return path;
+    }
+}
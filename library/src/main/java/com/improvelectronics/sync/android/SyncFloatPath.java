@@ -0,0 +1,276 @@
+/*******************************************************************************
+ Copyright © 2014 Kent Displays, Inc.
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ******************************************************************************/
+
+package com.improvelectronics.sync.android;
+
+import android.graphics.Path;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Polyline path stored in a growable float array instead of boxed points, with an optional line width for every point.
+ * The Android graphics {@link android.graphics.Path Path} used for drawing is only built when {@link #getPath()} is first
+ * called and is then kept, extended with points added later and rebuilt only after {@link #reset()}. Everything apart
+ * from {@link #getPath()} is plain Java.
+ */
+public class SyncFloatPath {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final int mPointSize;
+    private float[] mPoints;
+    private int mPointCount;
+
+    // Index of the first point of every contour, the first contour starts at 0.
+    private int[] mContours;
+    private int mContourCount;
+
+    private float mStrokeWidth;
+
+    // Native path and the number of points and contours that were added to it.
+    private Path mPath;
+    private int mPathPointCount;
+    private int mPathContourCount;
+
+    public SyncFloatPath() {
+        this(false);
+    }
+
+    /**
+     * @param hasWidths true to keep a line width for every point
+     */
+    public SyncFloatPath(boolean hasWidths) {
+        mPointSize = hasWidths ? 3 : 2;
+        mPoints = new float[INITIAL_CAPACITY * mPointSize];
+        mContours = new int[4];
+    }
+
+    /**
+     * Creates a path through the vertices of a stroke, keeping their widths.
+     *
+     * @param stroke stroke to copy
+     */
+    public SyncFloatPath(SyncStroke stroke) {
+        mPointSize = 3;
+        int count = stroke.getVertexCount();
+        mPoints = Arrays.copyOf(stroke.getVertices(), Math.max(count, INITIAL_CAPACITY) * 3);
+        mPointCount = count;
+        mContours = new int[4];
+        mContourCount = count > 0 ? 1 : 0;
+    }
+
+    /**
+     * Creates a path with the points and stroke width of a {@link SyncPath}.
+     *
+     * @param path path to copy
+     */
+    public SyncFloatPath(SyncPath path) {
+        this(false);
+        mStrokeWidth = path.getStrokeWidth();
+        for (int i = 0; i < path.getPoints().size(); i++) {
+            if (i == 0) moveTo(path.getPoints().get(i).x, path.getPoints().get(i).y);
+            else lineTo(path.getPoints().get(i).x, path.getPoints().get(i).y);
+        }
+    }
+
+    public void moveTo(float x, float y) {
+        moveTo(x, y, mStrokeWidth);
+    }
+
+    /**
+     * Starts a new contour.
+     *
+     * @param width line width at the point, ignored if the path has no widths
+     */
+    public void moveTo(float x, float y, float width) {
+        if (mContourCount == mContours.length) mContours = Arrays.copyOf(mContours, mContourCount * 2);
+        mContours[mContourCount++] = mPointCount;
+        addPoint(x, y, width);
+    }
+
+    public void lineTo(float x, float y) {
+        lineTo(x, y, mStrokeWidth);
+    }
+
+    /**
+     * Adds a line to the current contour, starting one at the origin if there is none.
+     *
+     * @param width line width at the point, ignored if the path has no widths
+     */
+    public void lineTo(float x, float y, float width) {
+        if (mContourCount == 0) moveTo(0, 0, width);
+        addPoint(x, y, width);
+    }
+
+    /**
+     * Adds a line with its own width, as in a segment record written by {@link Filtering}. The line continues the current
+     * contour if it starts at the last point, otherwise it starts a new contour, so consecutive segments of a stroke
+     * share their points.
+     *
+     * @param width line width, kept at the end point of the line
+     */
+    public void addSegment(float x0, float y0, float x1, float y1, float width) {
+        int last = (mPointCount - 1) * mPointSize;
+        if (mContourCount == 0 || mPoints[last] != x0 || mPoints[last + 1] != y0) moveTo(x0, y0, width);
+        addPoint(x1, y1, width);
+    }
+
+    /**
+     * Returns the number of lines in the path, one less than the number of points of every contour.
+     *
+     * @return line count
+     */
+    public int getSegmentCount() {
+        return mPointCount - mContourCount;
+    }
+
+    private void addPoint(float x, float y, float width) {
+        int index = mPointCount * mPointSize;
+        if (index + mPointSize > mPoints.length) mPoints = Arrays.copyOf(mPoints, mPoints.length * 2);
+        mPoints[index] = x;
+        mPoints[index + 1] = y;
+        if (mPointSize == 3) mPoints[index + 2] = width;
+        mPointCount++;
+    }
+
+    public void reset() {
+        mPointCount = 0;
+        mContourCount = 0;
+        mStrokeWidth = 0;
+        if (mPath != null) mPath.rewind();
+        mPathPointCount = 0;
+        mPathContourCount = 0;
+    }
+
+    public void setStrokeWidth(float strokeWidth) {
+        mStrokeWidth = strokeWidth;
+    }
+
+    public float getStrokeWidth() {
+        return mStrokeWidth;
+    }
+
+    public boolean hasWidths() {
+        return mPointSize == 3;
+    }
+
+    public int getPointCount() {
+        return mPointCount;
+    }
+
+    public float getX(int index) {
+        return mPoints[index * mPointSize];
+    }
+
+    public float getY(int index) {
+        return mPoints[index * mPointSize + 1];
+    }
+
+    /**
+     * Returns the line width at a point.
+     *
+     * @param index index of the point
+     * @return width at the point, or the stroke width if the path has no widths
+     */
+    public float getWidth(int index) {
+        return mPointSize == 3 ? mPoints[index * mPointSize + 2] : mStrokeWidth;
+    }
+
+    public int getContourCount() {
+        return mContourCount;
+    }
+
+    /**
+     * Returns the index of the first point of a contour.
+     *
+     * @param contour index of the contour
+     * @return index of its first point
+     */
+    public int getContourStart(int contour) {
+        return mContours[contour];
+    }
+
+    /**
+     * Returns the Android graphics path for drawing, building it on first use and adding any points that were added
+     * since the last call.
+     *
+     * @return path, owned by this object and must not be modified
+     */
+    public Path getPath() {
+        if (mPath == null) mPath = new Path();
+        for (int i = mPathPointCount; i < mPointCount; i++) {
+            float x = mPoints[i * mPointSize], y = mPoints[i * mPointSize + 1];
+            if (mPathContourCount < mContourCount && mContours[mPathContourCount] == i) {
+                mPath.moveTo(x, y);
+                mPathContourCount++;
+            } else {
+                mPath.lineTo(x, y);
+            }
+        }
+        mPathPointCount = mPointCount;
+        return mPath;
+    }
+
+    /**
+     * Creates one {@link SyncPath} for every line of the path, with the width at the end point of the line as its stroke
+     * width. This is the inverse of {@link #addSegment(float, float, float, float, float)}.
+     *
+     * @return new paths in the order the lines were added
+     */
+    public List<SyncPath> toSegmentPaths() {
+        List<SyncPath> paths = new ArrayList<SyncPath>(getSegmentCount());
+        for (int contour = 0; contour < mContourCount; contour++) {
+            int end = contour + 1 < mContourCount ? mContours[contour + 1] : mPointCount;
+            for (int i = mContours[contour] + 1; i < end; i++) {
+                SyncPath path = new SyncPath();
+                path.moveTo(getX(i - 1), getY(i - 1));
+                path.lineTo(getX(i), getY(i));
+                path.setStrokeWidth(getWidth(i));
+                paths.add(path);
+            }
+        }
+        return paths;
+    }
+
+    /**
+     * Creates a {@link SyncPath} with the same points, for code that still expects one.
+     *
+     * @return new path
+     */
+    public SyncPath toSyncPath() {
+        SyncPath path = new SyncPath();
+        path.setStrokeWidth(mStrokeWidth);
+        int contour = 0;
+        for (int i = 0; i < mPointCount; i++) {
+            float x = mPoints[i * mPointSize], y = mPoints[i * mPointSize + 1];
+            if (contour < mContourCount && mContours[contour] == i) {
+                path.moveTo(x, y);
+                contour++;
+            } else {
+                path.lineTo(x, y);
+            }
+        }
+        return path;
+    }
+}
@@ -0,0 +1,83 @@
+/*******************************************************************************
+ Copyright © 2014 Kent Displays, Inc.
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ******************************************************************************/
+
+package com.improvelectronics.sync.android;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+
+/**
+ * Streams strokes into an InkML document. Every stroke becomes a trace of its vertices with X and Y channels in
+ * millimeters from the top left corner of the writing area, and a W channel with the line width in millimeters.
+ */
+public class SyncInkMLWriter extends SyncStrokeWriter {
+
+    // Digitizer resolution is 0.01 mm, so two fraction digits keep every tick.
+    private static final float MM_PER_UNIT = 0.01f;
+    private static final int DECIMALS = 2;
+
+    public SyncInkMLWriter(OutputStream out) {
+        super(out);
+    }
+
+    public SyncInkMLWriter(Writer writer) {
+        super(writer);
+    }
+
+    @Override
+    protected void writeHeader() throws IOException {
+        write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<ink xmlns=\"http://www.w3.org/2003/InkML\">\n"
+                + "<definitions>\n"
+                + "<context xml:id=\"ctx0\">\n"
+                + "<traceFormat>\n"
+                + "<channel name=\"X\" type=\"decimal\" units=\"mm\"/>\n"
+                + "<channel name=\"Y\" type=\"decimal\" units=\"mm\"/>\n"
+                + "<channel name=\"W\" type=\"decimal\" units=\"mm\"/>\n"
+                + "</traceFormat>\n"
+                + "</context>\n"
+                + "</definitions>\n");
+    }
+
+    @Override
+    protected void writeStroke(SyncStroke stroke) throws IOException {
+        write("<trace xml:id=\"t");
+        writeInteger(stroke.getId());
+        write("\" contextRef=\"#ctx0\">");
+        int count = stroke.getVertexCount();
+        for (int i = 0; i < count; i++) {
+            if (i > 0) write(", ");
+            writeNumber(stroke.getX(i) * MM_PER_UNIT, DECIMALS);
+            write(' ');
+            writeNumber(stroke.getY(i) * MM_PER_UNIT, DECIMALS);
+            write(' ');
+            writeNumber(stroke.getWidth(i) * MM_PER_UNIT, DECIMALS + 1);
+        }
+        write("</trace>\n");
+    }
+
+    @Override
+    protected void writeFooter() throws IOException {
+        write("</ink>\n");
+    }
+}
@@ -0,0 +1,290 @@
+/*******************************************************************************
+ Copyright © 2014 Kent Displays, Inc.
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ******************************************************************************/
+
+package com.improvelectronics.sync.android;
+
+import android.util.Log;
+
+import com.improvelectronics.sync.hid.HIDSetReport;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Append-only journal of the capture samples that drew the current page, kept in a memory-mapped file so the page can
+ * be rebuilt after a crash or a lost connection by filtering the samples again. Only samples with the stylus on the
+ * surface and the sample lifting it are recorded, as {@link Filtering#SAMPLE_SIZE} ints each, and the journal starts
+ * over when the page is erased. Appending writes into the mapped file without allocating; a background thread forces
+ * the written samples to storage periodically. The file has a fixed capacity and samples past it are dropped.
+ * <p/>
+ * Samples written before a crash of the process are kept by the mapped file. After a power loss, samples written since
+ * the last force may be lost, and the operating system may have stored the pages of the file in any order. Every sample
+ * therefore carries a check value of its fields, its index and the generation of the page. When a journal is opened, it
+ * is cut at the first sample that does not match, so a torn or stale sample is not read back.
+ * <p/>
+ * The journal can be added to a {@link SyncPipeline} as a stage, recording the capture report of every frame that was
+ * not replayed from a journal.
+ */
+public class SyncJournal implements SyncPipeline.Stage {
+
+    private static final String TAG = SyncJournal.class.getSimpleName();
+
+    /**
+     * Default size of the journal file, enough for about an hour of continuous writing.
+     */
+    public static final int DEFAULT_CAPACITY = 8 * 1024 * 1024;
+
+    /**
+     * Default time between forcing written samples to storage.
+     */
+    public static final long DEFAULT_FORCE_INTERVAL_MS = 1000;
+
+    private static final int MAGIC = 0x53594E4A;
+    private static final int VERSION = 2;
+
+    // Header: magic, version, number of samples and the generation of the page, increased on every clear.
+    private static final int HEADER_SIZE = 16;
+    private static final int COUNT_OFFSET = 8;
+    private static final int GENERATION_OFFSET = 12;
+    private static final int SAMPLE_BYTES = Filtering.SAMPLE_SIZE * 4;
+
+    // The check value of a sample is kept in the bits of the flags int above the flags.
+    private static final int CHECK_SHIFT = 16;
+
+    // Flags kept for a sample, the stylus flags without the button flags.
+    private static final int STYLUS_FLAGS = 0x07;
+    private static final int CONTACT_FLAGS = 0x05;
+
+    private final RandomAccessFile mFile;
+    private final MappedByteBuffer mBuffer;
+    private final int mMaxSamples;
+    private final Thread mForceThread;
+    private final long mForceInterval;
+
+    private int mSampleCount;
+    private int mGeneration;
+    private boolean mInContact;
+    private boolean mWarnedFull;
+    private volatile boolean mDirty;
+    private volatile boolean mClosed;
+
+    public SyncJournal(File file) throws IOException {
+        this(file, DEFAULT_CAPACITY, DEFAULT_FORCE_INTERVAL_MS);
+    }
+
+    /**
+     * Opens a journal, keeping the samples of an existing journal file.
+     *
+     * @param file            journal file, created if it does not exist
+     * @param capacity        size of the file in bytes
+     * @param forceIntervalMs time between forcing written samples to storage
+     * @throws IOException if the file could not be opened or mapped
+     */
+    public SyncJournal(File file, int capacity, long forceIntervalMs) throws IOException {
+        if (capacity < HEADER_SIZE + SAMPLE_BYTES) throw new IllegalArgumentException("capacity is too small");
+        mFile = new RandomAccessFile(file, "rw");
+        try {
+            if (mFile.length() < capacity) mFile.setLength(capacity);
+            mBuffer = mFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        } catch (IOException e) {
+            mFile.close();
+            throw e;
+        }
+        mMaxSamples = (capacity - HEADER_SIZE) / SAMPLE_BYTES;
+        mForceInterval = forceIntervalMs;
+
+        if (mBuffer.getInt(0) == MAGIC && mBuffer.getInt(4) == VERSION) {
+            mGeneration = mBuffer.getInt(GENERATION_OFFSET);
+            mSampleCount = validSampleCount(Math.max(0, Math.min(mMaxSamples, mBuffer.getInt(COUNT_OFFSET))));
+            if (mSampleCount != mBuffer.getInt(COUNT_OFFSET)) {
+                Log.w(TAG, "journal was cut to " + mSampleCount + " samples that passed their check");
+                mBuffer.putInt(COUNT_OFFSET, mSampleCount);
+                mBuffer.force();
+            }
+        } else {
+            mBuffer.putInt(0, MAGIC);
+            mBuffer.putInt(4, VERSION);
+            mBuffer.putInt(COUNT_OFFSET, 0);
+            mBuffer.putInt(GENERATION_OFFSET, 0);
+            mSampleCount = 0;
+            mBuffer.force();
+        }
+        if (mSampleCount > 0) {
+            int flags = mBuffer.getInt(HEADER_SIZE + (mSampleCount - 1) * SAMPLE_BYTES + 12) & STYLUS_FLAGS;
+            mInContact = (flags & CONTACT_FLAGS) == CONTACT_FLAGS;
+        }
+
+        mForceThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                forceLoop();
+            }
+        }, TAG);
+        mForceThread.setDaemon(true);
+        mForceThread.start();
+    }
+
+    /**
+     * Records a sample if it draws ink or lifts the stylus.
+     *
+     * @return false if the sample should have been recorded but the journal is full
+     */
+    public boolean append(int x, int y, int pressure, int flags) {
+        flags &= STYLUS_FLAGS;
+        boolean contact = (flags & CONTACT_FLAGS) == CONTACT_FLAGS;
+        if (!contact && !mInContact) return true;
+
+        if (mSampleCount == mMaxSamples) {
+            if (!mWarnedFull) Log.w(TAG, "journal is full, samples are no longer recorded");
+            mWarnedFull = true;
+            return false;
+        }
+
+        int position = HEADER_SIZE + mSampleCount * SAMPLE_BYTES;
+        mBuffer.putInt(position, x);
+        mBuffer.putInt(position + 4, y);
+        mBuffer.putInt(position + 8, pressure);
+        mBuffer.putInt(position + 12, flags | check(mGeneration, mSampleCount, x, y, pressure, flags) << CHECK_SHIFT);
+
+        // The count is written last so a crash of the process never leaves a partly written sample in the journal.
+        mSampleCount++;
+        mBuffer.putInt(COUNT_OFFSET, mSampleCount);
+        mInContact = contact;
+        mDirty = true;
+        return true;
+    }
+
+    /**
+     * Starts a new page, dropping all samples.
+     */
+    public void clear() {
+        mSampleCount = 0;
+        mGeneration++;
+        mBuffer.putInt(COUNT_OFFSET, 0);
+        mBuffer.putInt(GENERATION_OFFSET, mGeneration);
+        mInContact = false;
+        mWarnedFull = false;
+        mDirty = true;
+    }
+
+    public int getSampleCount() {
+        return mSampleCount;
+    }
+
+    public boolean isFull() {
+        return mSampleCount == mMaxSamples;
+    }
+
+    /**
+     * Reads the recorded samples.
+     *
+     * @return samples of {@link Filtering#SAMPLE_SIZE} ints (x, y, pressure, flags)
+     */
+    public int[] readSamples() {
+        int[] samples = new int[mSampleCount * Filtering.SAMPLE_SIZE];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = mBuffer.getInt(HEADER_SIZE + i * 4);
+        }
+        for (int i = 3; i < samples.length; i += Filtering.SAMPLE_SIZE) {
+            samples[i] &= STYLUS_FLAGS;
+        }
+        return samples;
+    }
+
+    // Number of leading samples whose check value matches.
+    private int validSampleCount(int count) {
+        for (int i = 0; i < count; i++) {
+            int position = HEADER_SIZE + i * SAMPLE_BYTES;
+            int x = mBuffer.getInt(position), y = mBuffer.getInt(position + 4), pressure = mBuffer.getInt(position + 8);
+            int stored = mBuffer.getInt(position + 12);
+            int flags = stored & STYLUS_FLAGS;
+            if (stored != (flags | check(mGeneration, i, x, y, pressure, flags) << CHECK_SHIFT)) return i;
+        }
+        return count;
+    }
+
+    // 16 bit FNV-1a style hash of a sample and where it belongs.
+    private static int check(int generation, int index, int x, int y, int pressure, int flags) {
+        int hash = 0x811C9DC5;
+        hash = (hash ^ generation) * 0x01000193;
+        hash = (hash ^ index) * 0x01000193;
+        hash = (hash ^ x) * 0x01000193;
+        hash = (hash ^ y) * 0x01000193;
+        hash = (hash ^ pressure) * 0x01000193;
+        hash = (hash ^ flags) * 0x01000193;
+        return (hash ^ (hash >>> 16)) & 0xFFFF;
+    }
+
+    /**
+     * Creates the capture report of a recorded sample, to replay it through a {@link SyncPipeline}.
+     */
+    public static SyncCaptureReport createCaptureReport(int[] samples, int offset) {
+        int x = samples[offset], y = samples[offset + 1], pressure = samples[offset + 2];
+        byte[] payload = {(byte) x, (byte) (x >> 8), (byte) y, (byte) (y >> 8), (byte) pressure, (byte) (pressure >> 8),
+                (byte) samples[offset + 3]};
+        return new SyncCaptureReport(HIDSetReport.TYPE_INPUT, (byte) 0, payload);
+    }
+
+    @Override
+    public void process(SyncPipeline.Frame frame, SyncPipeline.Output output) {
+        SyncCaptureReport report = frame.captureReport;
+        if (report != null && !frame.replayed) {
+            if (report.hasEraseSwitchFlag()) {
+                clear();
+            } else {
+                append((int) report.getX(), (int) report.getY(), (int) report.getPressure(), report.getFlags() & 0xFF);
+            }
+        }
+        output.emit(frame);
+    }
+
+    /**
+     * Forces the journal to storage and closes the file.
+     */
+    public void close() {
+        mClosed = true;
+        mForceThread.interrupt();
+        mBuffer.force();
+        try {
+            mFile.close();
+        } catch (IOException e) {
+            Log.e(TAG, "unable to close journal", e);
+        }
+    }
+
+    private void forceLoop() {
+        while (!mClosed) {
+            try {
+                Thread.sleep(mForceInterval);
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (mDirty) {
+                mDirty = false;
+                mBuffer.force();
+            }
+        }
+    }
+}
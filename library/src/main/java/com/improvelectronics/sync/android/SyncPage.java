@@ -0,0 +1,267 @@
+/*******************************************************************************
+ Copyright © 2014 Kent Displays, Inc.
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ******************************************************************************/
+
+package com.improvelectronics.sync.android;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Immutable page of ink that was sealed when the erase or save button was pushed. The {@link SyncPageHistory} holding
+ * the page compacts its strokes with {@link StrokeCodec} on a background thread and may later spill older pages to
+ * storage. {@link #getStrokes()} decodes the strokes again, reading them back from the file if the page was spilled.
+ */
+public class SyncPage {
+
+    /**
+     * The page was sealed because the erase button was pushed or the Sync was erased by {@link SyncStreamingService#eraseSync()}.
+     */
+    public static final int REASON_ERASE = 0;
+
+    /**
+     * The page was sealed because the save button was pushed, the ink stays on the Sync.
+     */
+    public static final int REASON_SAVE = 1;
+
+    private final int mNumber;
+    private final int mReason;
+    private final long mSealTime;
+    private final int mStrokeCount;
+
+    // Strokes until they are encoded, then the encoded strokes while the page is in memory, otherwise the file they
+    // were spilled to.
+    private List<SyncStroke> mStrokes;
+    private byte[] mData;
+    private int mEncodedSize;
+    private File mFile;
+    private boolean mSpillScheduled;
+
+    private SyncPage(int number, int reason, long sealTime, List<SyncStroke> strokes) {
+        mNumber = number;
+        mReason = reason;
+        mSealTime = sealTime;
+        mStrokeCount = strokes.size();
+        mStrokes = strokes;
+    }
+
+    /**
+     * Seals strokes into a page. The strokes are encoded later by {@link #encode()}.
+     *
+     * @param number number of the page
+     * @param reason {@link #REASON_ERASE} or {@link #REASON_SAVE}
+     * @param strokes completed strokes of the page, the list must not change afterwards
+     */
+    static SyncPage seal(int number, int reason, List<SyncStroke> strokes) {
+        return new SyncPage(number, reason, System.currentTimeMillis(), strokes);
+    }
+
+    /**
+     * Compacts the strokes with {@link StrokeCodec} and releases them, unless that was done already.
+     */
+    synchronized void encode() {
+        List<SyncStroke> strokes = mStrokes;
+        if (strokes == null) return;
+
+        int size = 0;
+        for (int i = 0; i < strokes.size(); i++) size += StrokeCodec.maxEncodedSize(strokes.get(i));
+
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        StrokeCodec.Encoder encoder = new StrokeCodec.Encoder();
+        for (int i = 0; i < strokes.size(); i++) encoder.encode(strokes.get(i), buffer);
+
+        // Only keep the bytes that were used.
+        byte[] data = new byte[buffer.position()];
+        System.arraycopy(buffer.array(), 0, data, 0, data.length);
+        mData = data;
+        mEncodedSize = data.length;
+        mStrokes = null;
+    }
+
+    /**
+     * Returns the number of the page, increasing with every page sealed by a {@link SyncPageHistory}.
+     *
+     * @return number
+     */
+    public int getNumber() {
+        return mNumber;
+    }
+
+    /**
+     * Returns why the page was sealed.
+     *
+     * @return {@link #REASON_ERASE} or {@link #REASON_SAVE}
+     */
+    public int getReason() {
+        return mReason;
+    }
+
+    /**
+     * Returns when the page was sealed, in milliseconds since the epoch.
+     *
+     * @return time
+     */
+    public long getSealTime() {
+        return mSealTime;
+    }
+
+    /**
+     * Returns the number of strokes on the page.
+     *
+     * @return stroke count
+     */
+    public int getStrokeCount() {
+        return mStrokeCount;
+    }
+
+    /**
+     * Returns the size of the compacted strokes in bytes, encoding them first if the history did not get to it yet.
+     *
+     * @return size
+     */
+    public synchronized int getEncodedSize() {
+        encode();
+        return mEncodedSize;
+    }
+
+    /**
+     * Returns whether the strokes are held in memory, otherwise they were spilled to storage.
+     *
+     * @return true if in memory
+     */
+    public synchronized boolean isInMemory() {
+        return mData != null || mStrokes != null;
+    }
+
+    /**
+     * Decodes the strokes of the page. Every call returns new strokes that the caller may keep.
+     *
+     * @return strokes in the order they were drawn
+     * @throws IOException if the page was spilled and could not be read back
+     */
+    public List<SyncStroke> getStrokes() throws IOException {
+        byte[] data;
+        File file;
+        int encodedSize;
+        synchronized (this) {
+            encode();
+            data = mData;
+            file = mFile;
+            encodedSize = mEncodedSize;
+        }
+        if (data == null) {
+            if (file == null) throw new IOException("page " + mNumber + " was removed");
+            data = readFile(file, encodedSize);
+        }
+
+        List<SyncStroke> strokes = new ArrayList<>(mStrokeCount);
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        StrokeCodec.Decoder decoder = new StrokeCodec.Decoder();
+        for (int i = 0; i < mStrokeCount; i++) {
+            SyncStroke stroke = decoder.decode(buffer);
+            if (stroke == null) throw new IOException("page " + mNumber + " is truncated");
+            strokes.add(stroke);
+        }
+        return strokes;
+    }
+
+    /**
+     * Marks the page to be spilled.
+     *
+     * @return false if the page was already marked or is not in memory
+     */
+    synchronized boolean scheduleSpill() {
+        if (mSpillScheduled || (mData == null && mStrokes == null)) return false;
+        mSpillScheduled = true;
+        return true;
+    }
+
+    /**
+     * Clears the mark set by {@link #scheduleSpill()} after a spill failed, so it is tried again.
+     */
+    synchronized void cancelSpill() {
+        mSpillScheduled = false;
+    }
+
+    /**
+     * Writes the strokes to a file and releases them from memory.
+     *
+     * @param file file to write
+     * @throws IOException if the file could not be written, the page then stays in memory
+     */
+    void spill(File file) throws IOException {
+        byte[] data;
+        synchronized (this) {
+            encode();
+            data = mData;
+        }
+        if (data == null) return;
+
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(data);
+        } finally {
+            out.close();
+        }
+
+        synchronized (this) {
+            mFile = file;
+            mData = null;
+        }
+    }
+
+    /**
+     * Releases the strokes and deletes the file they were spilled to.
+     */
+    void delete() {
+        File file;
+        synchronized (this) {
+            file = mFile;
+            mFile = null;
+            mStrokes = null;
+            mData = null;
+        }
+        if (file != null) file.delete();
+    }
+
+    private static byte[] readFile(File file, int size) throws IOException {
+        byte[] data = new byte[size];
+        InputStream in = new FileInputStream(file);
+        try {
+            int offset = 0;
+            while (offset < size) {
+                int read = in.read(data, offset, size - offset);
+                if (read < 0) throw new IOException("unexpected end of " + file);
+                offset += read;
+            }
+        } finally {
+            in.close();
+        }
+        return data;
+    }
+}
@@ -0,0 +1,191 @@
+/*******************************************************************************
+ Copyright © 2014 Kent Displays, Inc.
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ******************************************************************************/
+
+package com.improvelectronics.sync.android;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Bounded history of sealed pages. A single background thread encodes every sealed page and spills older pages to files
+ * in a directory, so only the newest pages are kept in memory. The oldest pages are dropped once the history holds its
+ * maximum number of pages. Files left by an earlier session are deleted when the history is created.
+ */
+public class SyncPageHistory {
+
+    private static final String TAG = SyncPageHistory.class.getSimpleName();
+    private static final String FILE_EXTENSION = ".page";
+
+    /**
+     * Default number of pages kept in memory.
+     */
+    public static final int DEFAULT_MAX_PAGES_IN_MEMORY = 4;
+
+    /**
+     * Default number of pages kept in total.
+     */
+    public static final int DEFAULT_MAX_PAGES = 100;
+
+    private final File mDirectory;
+    private final List<SyncPage> mPages = new ArrayList<>();
+    private ExecutorService mExecutor;
+    private int mMaxPagesInMemory = DEFAULT_MAX_PAGES_IN_MEMORY;
+    private int mMaxPages = DEFAULT_MAX_PAGES;
+    private int mNextNumber;
+
+    /**
+     * @param directory directory older pages are spilled to, or null to drop pages that no longer fit in memory
+     */
+    public SyncPageHistory(File directory) {
+        mDirectory = directory;
+        if (directory == null) return;
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            Log.e(TAG, "unable to create " + directory + ", pages will not be spilled");
+            return;
+        }
+        File[] files = directory.listFiles();
+        if (files == null) return;
+        for (File file : files) {
+            if (file.getName().endsWith(FILE_EXTENSION)) file.delete();
+        }
+    }
+
+    /**
+     * Sets how many pages are retained.
+     *
+     * @param maxPagesInMemory number of newest pages kept in memory
+     * @param maxPages         number of pages kept in memory and in storage, at least maxPagesInMemory
+     */
+    public synchronized void setRetention(int maxPagesInMemory, int maxPages) {
+        if (maxPagesInMemory < 0 || maxPages < maxPagesInMemory) {
+            throw new IllegalArgumentException("need 0 <= maxPagesInMemory <= maxPages");
+        }
+        mMaxPagesInMemory = maxPagesInMemory;
+        mMaxPages = maxPages;
+        trim();
+    }
+
+    /**
+     * Seals strokes into a new page and adds it to the history. The strokes are encoded on the background thread.
+     *
+     * @param strokes completed strokes of the page, the list must not change afterwards, such as a {@link StrokeVector}
+     * @param reason  {@link SyncPage#REASON_ERASE} or {@link SyncPage#REASON_SAVE}
+     * @return page that was sealed
+     */
+    public synchronized SyncPage seal(List<SyncStroke> strokes, int reason) {
+        final SyncPage page = SyncPage.seal(mNextNumber++, reason, strokes);
+        mPages.add(page);
+        execute(new Runnable() {
+            @Override
+            public void run() {
+                page.encode();
+            }
+        });
+        trim();
+        return page;
+    }
+
+    /**
+     * Returns the pages of the history.
+     *
+     * @return pages from the oldest to the newest
+     */
+    public synchronized List<SyncPage> getPages() {
+        return Collections.unmodifiableList(new ArrayList<>(mPages));
+    }
+
+    public synchronized int getPageCount() {
+        return mPages.size();
+    }
+
+    /**
+     * Removes every page.
+     */
+    public synchronized void clear() {
+        for (SyncPage page : mPages) delete(page);
+        mPages.clear();
+    }
+
+    /**
+     * Stops the background thread after pending files were written or deleted.
+     */
+    public synchronized void shutdown() {
+        if (mExecutor != null) mExecutor.shutdown();
+    }
+
+    private void trim() {
+        while (mPages.size() > mMaxPages) delete(mPages.remove(0));
+
+        int count = mPages.size();
+        for (int i = 0; i < count - mMaxPagesInMemory; i++) {
+            final SyncPage page = mPages.get(i);
+            if (mDirectory == null) {
+                page.delete();
+                mPages.remove(i--);
+                count--;
+                continue;
+            }
+            if (!page.scheduleSpill()) continue;
+
+            final File file = new File(mDirectory, page.getNumber() + FILE_EXTENSION);
+            execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        page.spill(file);
+                    } catch (IOException e) {
+                        Log.e(TAG, "unable to spill page " + page.getNumber() + ", keeping it in memory", e);
+                        file.delete();
+                        page.cancelSpill();
+                    }
+                }
+            });
+        }
+    }
+
+    // Files are deleted on the same thread they are written on, so a page is never deleted while it is spilled.
+    private void delete(final SyncPage page) {
+        if (mExecutor == null) {
+            page.delete();
+            return;
+        }
+        execute(new Runnable() {
+            @Override
+            public void run() {
+                page.delete();
+            }
+        });
+    }
+
+    private void execute(Runnable runnable) {
+        if (mExecutor == null) mExecutor = Executors.newSingleThreadExecutor();
+        if (!mExecutor.isShutdown()) mExecutor.execute(runnable);
+    }
+}
@@ -54,28 +54,61 @@ public class SyncPath extends Path implements Parcelable {
         if (path instanceof SyncPath) {
             mStrokeWidth = ((SyncPath) path).getStrokeWidth();
             mPoints = new ArrayList<>(((SyncPath) path).getPoints());
+        } else {
+            mPoints = new ArrayList<>();
         }
     }
 
     private SyncPath(Parcel in) {
-        super();
+        this();
 
         mStrokeWidth = in.readFloat();
-        in.readList(mPoints, null);
-        drawFromPoints();
+        float[] points = in.createFloatArray();
+        drawFromPoints(points, 0, points.length / 2);
     }
 
-    private void drawFromPoints() {
-        for (int i = 0; i < mPoints.size(); i++) {
-            PointF point = mPoints.get(i);
+    /**
+     * Creates a path from packed points.
+     *
+     * @param strokeWidth width of the path
+     * @param points      x and y pairs
+     * @param offset      index in points of the first x
+     * @param count       number of points
+     */
+    SyncPath(float strokeWidth, float[] points, int offset, int count) {
+        this();
+
+        mStrokeWidth = strokeWidth;
+        drawFromPoints(points, offset, count);
+    }
+
+    private void drawFromPoints(float[] points, int offset, int count) {
+        for (int i = 0; i < count; i++) {
+            float x = points[offset + i * 2], y = points[offset + i * 2 + 1];
             if (i == 0) {
-                moveTo(point.x, point.y);
+                moveTo(x, y);
             } else {
-                lineTo(point.x, point.y);
+                lineTo(x, y);
             }
         }
     }
 
+    /**
+     * Writes the points of this path as x and y pairs.
+     *
+     * @param out    buffer that must hold twice the number of points past offset
+     * @param offset index in out to write the first x at
+     * @return number of points written
+     */
+    int packPoints(float[] out, int offset) {
+        for (int i = 0; i < mPoints.size(); i++) {
+            PointF point = mPoints.get(i);
+            out[offset + i * 2] = point.x;
+            out[offset + i * 2 + 1] = point.y;
+        }
+        return mPoints.size();
+    }
+
     public void setStrokeWidth(float strokeWidth) {
         mStrokeWidth = strokeWidth;
     }
@@ -114,8 +147,11 @@ public class SyncPath extends Path implements Parcelable {
 
     @Override
     public void writeToParcel(Parcel dest, int flags) {
+        // Points are written as one packed array instead of a list of parcelable objects.
+        float[] points = new float[mPoints.size() * 2];
+        packPoints(points, 0);
         dest.writeFloat(mStrokeWidth);
-        dest.writeList(mPoints);
+        dest.writeFloatArray(points);
     }
 
     public static final Parcelable.Creator<SyncPath> CREATOR
@@ -0,0 +1,109 @@
+/*******************************************************************************
+ Copyright © 2014 Kent Displays, Inc.
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ******************************************************************************/
+
+package com.improvelectronics.sync.android;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parcelable collection of {@link SyncPath}s stored as a few contiguous arrays: the stroke width and point count of every
+ * path and the x and y pairs of all paths one after the other. Writing a page of paths to a {@link Parcel}, for example
+ * to another process or in onSaveInstanceState, copies these arrays instead of parceling every path and point.
+ */
+public class SyncPathBatch implements Parcelable {
+
+    private final float[] mStrokeWidths;
+    private final int[] mPointCounts;
+    private final float[] mPoints;
+
+    /**
+     * @param paths paths to store
+     */
+    public SyncPathBatch(List<? extends SyncPath> paths) {
+        int pathCount = paths.size();
+        int pointCount = 0;
+        for (int i = 0; i < pathCount; i++) pointCount += paths.get(i).getPoints().size();
+
+        mStrokeWidths = new float[pathCount];
+        mPointCounts = new int[pathCount];
+        mPoints = new float[pointCount * 2];
+        int offset = 0;
+        for (int i = 0; i < pathCount; i++) {
+            SyncPath path = paths.get(i);
+            mStrokeWidths[i] = path.getStrokeWidth();
+            mPointCounts[i] = path.packPoints(mPoints, offset);
+            offset += mPointCounts[i] * 2;
+        }
+    }
+
+    private SyncPathBatch(Parcel in) {
+        mStrokeWidths = in.createFloatArray();
+        mPointCounts = in.createIntArray();
+        mPoints = in.createFloatArray();
+    }
+
+    public int getPathCount() {
+        return mStrokeWidths.length;
+    }
+
+    /**
+     * Creates the paths stored in this batch.
+     *
+     * @return new paths
+     */
+    public List<SyncPath> getPaths() {
+        List<SyncPath> paths = new ArrayList<SyncPath>(mStrokeWidths.length);
+        int offset = 0;
+        for (int i = 0; i < mStrokeWidths.length; i++) {
+            paths.add(new SyncPath(mStrokeWidths[i], mPoints, offset, mPointCounts[i]));
+            offset += mPointCounts[i] * 2;
+        }
+        return paths;
+    }
+
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+
+    @Override
+    public void writeToParcel(Parcel dest, int flags) {
+        dest.writeFloatArray(mStrokeWidths);
+        dest.writeIntArray(mPointCounts);
+        dest.writeFloatArray(mPoints);
+    }
+
+    public static final Parcelable.Creator<SyncPathBatch> CREATOR
+            = new Parcelable.Creator<SyncPathBatch>() {
+        public SyncPathBatch createFromParcel(Parcel in) {
+            return new SyncPathBatch(in);
+        }
+
+        public SyncPathBatch[] newArray(int size) {
+            return new SyncPathBatch[size];
+        }
+    };
+}
@@ -0,0 +1,366 @@
+/*******************************************************************************
+ Copyright © 2014 Kent Displays, Inc.
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ******************************************************************************/
+
+package com.improvelectronics.sync.android;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Writes captured ink to a PDF document while it is produced. Segments, strokes or journaled samples are turned into
+ * drawing operators and written straight into the content stream of the current page through a small fixed buffer, so
+ * memory use does not depend on how much is drawn; only the position of every PDF object is kept for the cross
+ * reference table. Pages are {@link SyncUtilities#PDF_WIDTH} by {@link SyncUtilities#PDF_HEIGHT} points unless set
+ * otherwise, and a document can hold any number of them. The writer is plain Java and is not thread safe.
+ */
+public class SyncPdfWriter {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    // Digits kept after the decimal point of coordinates in points.
+    private static final int DECIMALS = 2;
+
+    // Line widths are rounded to a tenth of a point so connected segments can share a path.
+    private static final float WIDTH_STEPS = 10.0f;
+
+    // Object numbers of the catalog and the page tree, written before and after all pages.
+    private static final int CATALOG_OBJECT = 1;
+    private static final int PAGES_OBJECT = 2;
+
+    private final OutputStream mOut;
+    private final float mPageWidth;
+    private final float mPageHeight;
+    private final SyncTransform mTransform;
+    private final byte[] mBuffer = new byte[BUFFER_SIZE];
+    private int mBufferSize;
+    private long mPosition;
+
+    private long[] mObjectOffsets = new long[16];
+    private int mObjectCount;
+    private int[] mPageObjects = new int[8];
+    private int mPageCount;
+
+    // State of the page being written.
+    private boolean mPageOpen;
+    private int mLengthObject;
+    private long mStreamStart;
+
+    // End point and width of the open line, so connected segments of the same width share one path.
+    private boolean mLineOpen;
+    private float mLineX, mLineY, mLineWidth = -1;
+
+    // Filter for samples read from a journal.
+    private SampleReplay mSampleReplay;
+    private final float[] mPageSegments = new float[Filtering.MAX_SEGMENTS_PER_SAMPLE * Filtering.SEGMENT_SIZE];
+
+    private boolean mClosed;
+
+    /**
+     * Creates a writer for pages of {@link SyncUtilities#PDF_WIDTH} by {@link SyncUtilities#PDF_HEIGHT} points, with the
+     * writing area turned upright to fill the page.
+     *
+     * @param out stream the document is written to, not closed by the writer
+     * @throws IOException if the header could not be written
+     */
+    public SyncPdfWriter(OutputStream out) throws IOException {
+        this(out, SyncUtilities.PDF_WIDTH, SyncUtilities.PDF_HEIGHT,
+                SyncTransform.fit(SyncUtilities.PDF_WIDTH, SyncUtilities.PDF_HEIGHT, 90));
+    }
+
+    /**
+     * @param out        stream the document is written to, not closed by the writer
+     * @param pageWidth  width of a page in points
+     * @param pageHeight height of a page in points
+     * @param transform  transform from digitizer coordinates to points, with y pointing down from the top of the page
+     * @throws IOException if the header could not be written
+     */
+    public SyncPdfWriter(OutputStream out, float pageWidth, float pageHeight, SyncTransform transform) throws IOException {
+        mOut = out;
+        mPageWidth = pageWidth;
+        mPageHeight = pageHeight;
+        mTransform = transform;
+
+        // Binary comment marks the file as binary for transfer programs.
+        write("%PDF-1.4\n%âãÏÓ\n");
+        beginObject(newObject());
+        write("<< /Type /Catalog /Pages " + PAGES_OBJECT + " 0 R >>\n");
+        endObject();
+        newObject();
+    }
+
+    /**
+     * Starts a new page, finishing the current one.
+     *
+     * @throws IOException if the page could not be written
+     */
+    public void startPage() throws IOException {
+        checkOpen();
+        if (mPageOpen) endPage();
+
+        int page = newObject(), contents = newObject();
+        mLengthObject = newObject();
+        if (mPageCount == mPageObjects.length) mPageObjects = Arrays.copyOf(mPageObjects, mPageCount * 2);
+        mPageObjects[mPageCount++] = page;
+
+        beginObject(page);
+        write("<< /Type /Page /Parent " + PAGES_OBJECT + " 0 R /MediaBox [0 0 ");
+        writeNumber(mPageWidth);
+        write(" ");
+        writeNumber(mPageHeight);
+        write("] /Resources << >> /Contents " + contents + " 0 R >>\n");
+        endObject();
+
+        beginObject(contents);
+        write("<< /Length " + mLengthObject + " 0 R >>\nstream\n");
+        mStreamStart = mPosition;
+        mPageOpen = true;
+
+        // Flip the page so y points down like the digitizer, and draw with round caps and joins.
+        write("1 0 0 -1 0 ");
+        writeNumber(mPageHeight);
+        write(" cm 1 J 1 j 0 G\n");
+
+        // Graphics state does not carry over between content streams, the first line of this page sets its width.
+        mLineWidth = -1;
+    }
+
+    /**
+     * Finishes the current page, if there is one.
+     *
+     * @throws IOException if the page could not be written
+     */
+    public void endPage() throws IOException {
+        checkOpen();
+        if (!mPageOpen) return;
+        endLine();
+        long length = mPosition - mStreamStart;
+        write("endstream\n");
+        endObject();
+
+        beginObject(mLengthObject);
+        writeInteger(length);
+        write("\n");
+        endObject();
+        mPageOpen = false;
+
+        // A stroke of the old page must not continue on the next one.
+        if (mSampleReplay != null) mSampleReplay.reset();
+    }
+
+    public int getPageCount() {
+        return mPageCount;
+    }
+
+    /**
+     * Draws segments of {@link Filtering#SEGMENT_SIZE} floats in digitizer units on the current page, starting a page if
+     * none is open.
+     *
+     * @param segments segments to draw
+     * @param offset   index in segments of the first segment
+     * @param count    number of segments
+     * @throws IOException if the segments could not be written
+     */
+    public void addSegments(float[] segments, int offset, int count) throws IOException {
+        while (count > 0) {
+            int batch = Math.min(count, Filtering.MAX_SEGMENTS_PER_SAMPLE);
+            mTransform.transformSegments(segments, offset, mPageSegments, 0, batch);
+            for (int i = 0; i < batch; i++) {
+                int index = i * Filtering.SEGMENT_SIZE;
+                line(mPageSegments[index], mPageSegments[index + 1], mPageSegments[index + 2], mPageSegments[index + 3],
+                        mPageSegments[index + 4]);
+            }
+            offset += batch * Filtering.SEGMENT_SIZE;
+            count -= batch;
+        }
+    }
+
+    /**
+     * Draws a stroke on the current page, starting a page if none is open.
+     *
+     * @param stroke stroke to draw
+     * @throws IOException if the stroke could not be written
+     */
+    public void addStroke(SyncStroke stroke) throws IOException {
+        int count = stroke.getVertexCount();
+        if (count == 0) return;
+        float scale = mTransform.getWidthScale();
+        float x0 = stroke.getX(0), y0 = stroke.getY(0);
+        float lastX = mTransform.mapX(x0, y0), lastY = mTransform.mapY(x0, y0);
+
+        // A single vertex is drawn as a dot by a line of no length with round caps.
+        if (count == 1) line(lastX, lastY, lastX, lastY, stroke.getWidth(0) * scale);
+        for (int i = 1; i < count; i++) {
+            float x = stroke.getX(i), y = stroke.getY(i);
+            float pageX = mTransform.mapX(x, y), pageY = mTransform.mapY(x, y);
+            line(lastX, lastY, pageX, pageY, stroke.getWidth(i) * scale);
+            lastX = pageX;
+            lastY = pageY;
+        }
+        endLine();
+    }
+
+    /**
+     * Filters packed samples, for example read from a {@link SyncJournal}, and draws the segments on the current page.
+     *
+     * @param samples samples of {@link Filtering#SAMPLE_SIZE} ints (x, y, pressure, flags)
+     * @param offset  index in samples of the first sample
+     * @param count   number of samples
+     * @throws IOException if the segments could not be written
+     */
+    public void addSamples(int[] samples, int offset, int count) throws IOException {
+        if (mSampleReplay == null) {
+            mSampleReplay = new SampleReplay(new SampleReplay.Target() {
+                @Override
+                public void onSegments(float[] segments, int offset, int count) throws IOException {
+                    addSegments(segments, offset, count);
+                }
+
+                @Override
+                public void onPenUp() {
+                }
+            });
+        }
+        mSampleReplay.replay(samples, offset, count);
+    }
+
+    /**
+     * Finishes the current page and the document. The output stream is flushed but not closed.
+     *
+     * @throws IOException if the document could not be written
+     */
+    public void close() throws IOException {
+        if (mClosed) return;
+        if (mPageCount == 0) startPage();
+        endPage();
+
+        beginObject(PAGES_OBJECT);
+        write("<< /Type /Pages /Count " + mPageCount + " /Kids [");
+        for (int i = 0; i < mPageCount; i++) {
+            write(i == 0 ? "" : " ");
+            writeInteger(mPageObjects[i]);
+            write(" 0 R");
+        }
+        write("] >>\n");
+        endObject();
+
+        // Cross reference table with fixed 20 byte entries.
+        long xref = mPosition;
+        write("xref\n0 " + (mObjectCount + 1) + "\n0000000000 65535 f \n");
+        for (int i = 1; i <= mObjectCount; i++) {
+            String offset = Long.toString(mObjectOffsets[i]);
+            write("0000000000".substring(offset.length()) + offset + " 00000 n \n");
+        }
+        write("trailer\n<< /Size " + (mObjectCount + 1) + " /Root " + CATALOG_OBJECT + " 0 R >>\nstartxref\n");
+        writeInteger(xref);
+        write("\n%%EOF\n");
+        flush();
+        mOut.flush();
+        mClosed = true;
+    }
+
+    private void line(float x0, float y0, float x1, float y1, float width) throws IOException {
+        if (!mPageOpen) startPage();
+
+        // Continue the open line if the segment starts where it ended and has the same width in the output.
+        float roundedWidth = Math.round(width * WIDTH_STEPS) / WIDTH_STEPS;
+        if (mLineOpen && (roundedWidth != mLineWidth || x0 != mLineX || y0 != mLineY)) endLine();
+        if (roundedWidth != mLineWidth) {
+            writeNumber(roundedWidth);
+            write(" w\n");
+            mLineWidth = roundedWidth;
+        }
+        if (!mLineOpen) {
+            writeNumber(x0);
+            write(" ");
+            writeNumber(y0);
+            write(" m ");
+            mLineOpen = true;
+        }
+        writeNumber(x1);
+        write(" ");
+        writeNumber(y1);
+        write(" l\n");
+        mLineX = x1;
+        mLineY = y1;
+    }
+
+    private void endLine() throws IOException {
+        if (!mLineOpen) return;
+        write("S\n");
+        mLineOpen = false;
+    }
+
+    private int newObject() {
+        mObjectCount++;
+        if (mObjectCount == mObjectOffsets.length) mObjectOffsets = Arrays.copyOf(mObjectOffsets, mObjectCount * 2);
+        return mObjectCount;
+    }
+
+    private void beginObject(int object) throws IOException {
+        mObjectOffsets[object] = mPosition;
+        writeInteger(object);
+        write(" 0 obj\n");
+    }
+
+    private void endObject() throws IOException {
+        write("endobj\n");
+    }
+
+    private void checkOpen() throws IOException {
+        if (mClosed) throw new IOException("writer is closed");
+    }
+
+    private void writeNumber(float value) throws IOException {
+        ensureCapacity(DecimalFormatter.MAX_LENGTH);
+        int end = DecimalFormatter.format(value, DECIMALS, mBuffer, mBufferSize);
+        mPosition += end - mBufferSize;
+        mBufferSize = end;
+    }
+
+    private void writeInteger(long value) throws IOException {
+        ensureCapacity(DecimalFormatter.MAX_LENGTH);
+        int end = DecimalFormatter.formatInteger(value, mBuffer, mBufferSize);
+        mPosition += end - mBufferSize;
+        mBufferSize = end;
+    }
+
+    /**
+     * Writes text made of characters up to 0xFF, one byte each.
+     */
+    private void write(String text) throws IOException {
+        for (int i = 0; i < text.length(); i++) {
+            if (mBufferSize == mBuffer.length) flush();
+            mBuffer[mBufferSize++] = (byte) text.charAt(i);
+        }
+        mPosition += text.length();
+    }
+
+    private void ensureCapacity(int bytes) throws IOException {
+        if (mBufferSize + bytes > mBuffer.length) flush();
+    }
+
+    private void flush() throws IOException {
+        mOut.write(mBuffer, 0, mBufferSize);
+        mBufferSize = 0;
+    }
+}
@@ -0,0 +1,603 @@
+/*******************************************************************************
+ Copyright © 2014 Kent Displays, Inc.
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ******************************************************************************/
+
+package com.improvelectronics.sync.android;
+
+import android.util.Log;
+
+import com.improvelectronics.sync.hid.HIDMessage;
+import com.improvelectronics.sync.hid.HIDUtilities;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Chain of stages that turns data read from the Boogie Board Sync into paths, strokes and listener callbacks. Data
+ * travels through the chain as {@link Frame}s and every stage may pass a frame on, drop it or pass on several frames
+ * derived from it. A stage runs on the thread of the stage before it unless it was given its own executor, which must
+ * run tasks one at a time and in order. Every stage keeps {@link Metrics} of the frames it handled so the slowest stage
+ * can be found.
+ */
+public class SyncPipeline {
+
+    private static final String TAG = SyncPipeline.class.getSimpleName();
+
+    /**
+     * Name of the stage that splits raw data into capture reports.
+     */
+    public static final String STAGE_DECODE = "decode";
+
+    /**
+     * Name of the stage that journals capture reports with a {@link SyncJournal}, added by {@link SyncStreamingService}.
+     */
+    public static final String STAGE_JOURNAL = "journal";
+
+    /**
+     * Name of the stage that drops repeated capture reports.
+     */
+    public static final String STAGE_COALESCE = "coalesce";
+
+    /**
+     * Name of the stage that filters capture reports into segments.
+     */
+    public static final String STAGE_FILTER = "filter";
+
+    /**
+     * Name of the stage that builds and simplifies strokes, added by {@link SyncStreamingService}.
+     */
+    public static final String STAGE_SIMPLIFY = "simplify";
+
+    /**
+     * Name of the stage that transforms segments into paths.
+     */
+    public static final String STAGE_TRANSFORM = "transform";
+
+    /**
+     * Name of the stage that keeps the paths drawn on the Sync, added by {@link SyncStreamingService}.
+     */
+    public static final String STAGE_STORE = "store";
+
+    /**
+     * Name of the stage that calls the listeners, added by {@link SyncStreamingService}.
+     */
+    public static final String STAGE_DISPATCH = "dispatch";
+
+    /**
+     * Processes frames of a pipeline. A stage is only called from one thread at a time.
+     */
+    public interface Stage {
+
+        /**
+         * Processes a frame and passes it, or frames derived from it, to the next stage.
+         *
+         * @param frame  frame to process
+         * @param output receives the frames for the next stage, may be called any number of times
+         */
+        void process(Frame frame, Output output);
+    }
+
+    public interface Output {
+        void emit(Frame frame);
+    }
+
+    /**
+     * Changes the default stages of a pipeline before it is built.
+     */
+    public interface Configurator {
+        void configure(Builder builder);
+    }
+
+    /**
+     * Unit of data passed between stages. Each stage fills in the fields it is responsible for. Frames are pooled, get
+     * one with {@link #obtain()}; the pipeline recycles a frame once it passed the last stage, so a stage must not keep a
+     * frame after emitting it and should {@link #recycle()} the frames it drops.
+     */
+    public static class Frame {
+        private static final int MAX_POOL_SIZE = 16;
+        private static final Object sPoolLock = new Object();
+        private static Frame sPool;
+        private static int sPoolSize;
+
+        private Frame mNext;
+
+        /**
+         * Raw data read from the Boogie Board Sync, set for frames submitted to the pipeline.
+         */
+        public byte[] buffer;
+        public int length;
+
+        /**
+         * Capture report decoded from the raw data.
+         */
+        public SyncCaptureReport captureReport;
+
+        /**
+         * The capture report was replayed from a {@link SyncJournal}, so it is not journaled again and not passed to
+         * listeners as a capture report.
+         */
+        public boolean replayed;
+
+        /**
+         * Segments of {@link Filtering#SEGMENT_SIZE} floats in digitizer units filtered from the capture report.
+         */
+        public final float[] segments = new float[Filtering.MAX_SEGMENTS_PER_SAMPLE * Filtering.SEGMENT_SIZE];
+        public int segmentCount;
+
+        /**
+         * State of the filter after the capture report, {@link Filtering.PathState#NO_POINTS} once the stylus is lifted.
+         */
+        public Filtering.PathState pathState;
+
+        /**
+         * Predicted segment in digitizer units, if prediction is enabled and the stylus is down.
+         */
+        public final float[] prediction = new float[Filtering.SEGMENT_SIZE];
+        public int predictionCount;
+
+        /**
+         * Paths built from the segments in target coordinates, an empty list if there are none.
+         */
+        public List<SyncPath> paths = Collections.emptyList();
+
+        /**
+         * Path built from the predicted segment in target coordinates, null if there is none.
+         */
+        public SyncPath predictedPath;
+
+        public Frame() {
+        }
+
+        public Frame(byte[] buffer, int length) {
+            this.buffer = buffer;
+            this.length = length;
+        }
+
+        /**
+         * Returns an empty frame from the pool, or a new frame if the pool is empty.
+         *
+         * @return frame
+         */
+        public static Frame obtain() {
+            synchronized (sPoolLock) {
+                if (sPool != null) {
+                    Frame frame = sPool;
+                    sPool = frame.mNext;
+                    frame.mNext = null;
+                    sPoolSize--;
+                    return frame;
+                }
+            }
+            return new Frame();
+        }
+
+        /**
+         * Returns a frame from the pool holding raw data read from the Boogie Board Sync.
+         *
+         * @param buffer raw data
+         * @param length number of bytes in buffer
+         * @return frame
+         */
+        public static Frame obtain(byte[] buffer, int length) {
+            Frame frame = obtain();
+            frame.buffer = buffer;
+            frame.length = length;
+            return frame;
+        }
+
+        /**
+         * Clears the frame and returns it to the pool. The frame must not be used afterwards.
+         */
+        public void recycle() {
+            buffer = null;
+            length = 0;
+            captureReport = null;
+            replayed = false;
+            segmentCount = 0;
+            pathState = null;
+            predictionCount = 0;
+            paths = Collections.emptyList();
+            predictedPath = null;
+
+            synchronized (sPoolLock) {
+                if (sPoolSize < MAX_POOL_SIZE) {
+                    mNext = sPool;
+                    sPool = this;
+                    sPoolSize++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Counters of a single stage. Values are updated by the thread running the stage and may be read from any thread.
+     */
+    public static class Metrics {
+        private final String mName;
+        private volatile long mItemsIn;
+        private volatile long mItemsOut;
+        private volatile long mProcessingTime;
+        private final AtomicInteger mQueueDepth = new AtomicInteger();
+        private volatile int mMaxQueueDepth;
+
+        Metrics(String name) {
+            mName = name;
+        }
+
+        public String getName() {
+            return mName;
+        }
+
+        public long getItemsIn() {
+            return mItemsIn;
+        }
+
+        public long getItemsOut() {
+            return mItemsOut;
+        }
+
+        /**
+         * Returns the time spent in the stage itself, not counting stages that ran after it on the same thread.
+         *
+         * @return processing time in nanoseconds
+         */
+        public long getProcessingTime() {
+            return mProcessingTime;
+        }
+
+        /**
+         * Returns the average time the stage took for one incoming frame.
+         *
+         * @return time per item in nanoseconds, 0 if no frames were processed
+         */
+        public double getTimePerItem() {
+            long itemsIn = mItemsIn;
+            return itemsIn == 0 ? 0 : (double) mProcessingTime / itemsIn;
+        }
+
+        /**
+         * Returns the number of frames waiting for the executor of the stage.
+         *
+         * @return queue depth, always 0 for a stage running on the thread of the stage before it
+         */
+        public int getQueueDepth() {
+            return mQueueDepth.get();
+        }
+
+        public int getMaxQueueDepth() {
+            return mMaxQueueDepth;
+        }
+
+        public void reset() {
+            mItemsIn = 0;
+            mItemsOut = 0;
+            mProcessingTime = 0;
+            mMaxQueueDepth = mQueueDepth.get();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: in %d, out %d, %.0f ns/item, queue %d (max %d)", mName, mItemsIn, mItemsOut,
+                    getTimePerItem(), getQueueDepth(), mMaxQueueDepth);
+        }
+    }
+
+    /**
+     * Composes the stages of a pipeline. Stages are identified by name so they can be inserted, replaced or removed.
+     */
+    public static class Builder {
+        private final List<String> mNames = new ArrayList<String>();
+        private final List<Stage> mStages = new ArrayList<Stage>();
+        private final List<Executor> mExecutors = new ArrayList<Executor>();
+
+        /**
+         * Adds a stage at the end of the pipeline, running on the thread of the stage before it.
+         */
+        public Builder addStage(String name, Stage stage) {
+            return addStage(name, stage, null);
+        }
+
+        /**
+         * Adds a stage at the end of the pipeline.
+         *
+         * @param name     unique name of the stage
+         * @param stage    stage to add
+         * @param executor executor running the stage, null to run it on the thread of the stage before it
+         */
+        public Builder addStage(String name, Stage stage, Executor executor) {
+            return insertStage(mStages.size(), name, stage, executor);
+        }
+
+        /**
+         * Adds a stage in front of an existing stage.
+         */
+        public Builder addStageBefore(String before, String name, Stage stage, Executor executor) {
+            return insertStage(indexOf(before), name, stage, executor);
+        }
+
+        /**
+         * Adds a stage after an existing stage.
+         */
+        public Builder addStageAfter(String after, String name, Stage stage, Executor executor) {
+            return insertStage(indexOf(after) + 1, name, stage, executor);
+        }
+
+        public Builder removeStage(String name) {
+            int index = indexOf(name);
+            mNames.remove(index);
+            mStages.remove(index);
+            mExecutors.remove(index);
+            return this;
+        }
+
+        /**
+         * Moves an existing stage onto an executor. The stage, and the stages after it that have no executor of their
+         * own, then run on that executor's thread, so only stages whose state is not touched from another thread may be
+         * moved. {@link SyncStreamingService} replaces the executor of the stages sharing its state, see
+         * {@link SyncStreamingService#setPipelineConfigurator(Configurator)}.
+         *
+         * @param name     name of the stage
+         * @param executor executor running the stage, null to run it on the thread of the stage before it
+         */
+        public Builder setExecutor(String name, Executor executor) {
+            mExecutors.set(indexOf(name), executor);
+            return this;
+        }
+
+        public boolean hasStage(String name) {
+            return mNames.contains(name);
+        }
+
+        public List<String> getStageNames() {
+            return Collections.unmodifiableList(mNames);
+        }
+
+        public SyncPipeline build() {
+            return new SyncPipeline(this);
+        }
+
+        private Builder insertStage(int index, String name, Stage stage, Executor executor) {
+            if (stage == null) throw new IllegalArgumentException("stage must not be null");
+            if (mNames.contains(name)) throw new IllegalArgumentException("duplicate stage " + name);
+            mNames.add(index, name);
+            mStages.add(index, stage);
+            mExecutors.add(index, executor);
+            return this;
+        }
+
+        private int indexOf(String name) {
+            int index = mNames.indexOf(name);
+            if (index < 0) throw new IllegalArgumentException("no stage named " + name);
+            return index;
+        }
+    }
+
+    private final StageRunner[] mRunners;
+    private final List<Metrics> mMetrics;
+
+    private SyncPipeline(Builder builder) {
+        int count = builder.mStages.size();
+        mRunners = new StageRunner[count];
+        List<Metrics> metrics = new ArrayList<Metrics>(count);
+        for (int i = 0; i < count; i++) {
+            mRunners[i] = new StageRunner(i, builder.mStages.get(i), builder.mExecutors.get(i),
+                    new Metrics(builder.mNames.get(i)));
+            metrics.add(mRunners[i].metrics);
+        }
+        mMetrics = Collections.unmodifiableList(metrics);
+    }
+
+    /**
+     * Passes a frame to the first stage, on the calling thread unless the stage has an executor.
+     *
+     * @param frame frame to process
+     */
+    public void submit(Frame frame) {
+        if (mRunners.length > 0) mRunners[0].enqueue(frame);
+    }
+
+    /**
+     * Returns the metrics of every stage in pipeline order.
+     *
+     * @return metrics
+     */
+    public List<Metrics> getMetrics() {
+        return mMetrics;
+    }
+
+    public void resetMetrics() {
+        for (Metrics metrics : mMetrics) metrics.reset();
+    }
+
+    private class StageRunner implements Output {
+        public final Metrics metrics;
+        private final int mIndex;
+        private final Stage mStage;
+        private final Executor mExecutor;
+        private final List<Frame> mOutput = new ArrayList<Frame>();
+
+        public StageRunner(int index, Stage stage, Executor executor, Metrics metrics) {
+            mIndex = index;
+            mStage = stage;
+            mExecutor = executor;
+            this.metrics = metrics;
+        }
+
+        public void enqueue(final Frame frame) {
+            if (mExecutor == null) {
+                run(frame);
+                return;
+            }
+
+            int depth = metrics.mQueueDepth.incrementAndGet();
+            if (depth > metrics.mMaxQueueDepth) metrics.mMaxQueueDepth = depth;
+            mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    metrics.mQueueDepth.decrementAndGet();
+                    StageRunner.this.run(frame);
+                }
+            });
+        }
+
+        @Override
+        public void emit(Frame frame) {
+            mOutput.add(frame);
+        }
+
+        private void run(Frame frame) {
+            long start = System.nanoTime();
+            mStage.process(frame, this);
+            metrics.mProcessingTime += System.nanoTime() - start;
+            metrics.mItemsIn++;
+            int count = mOutput.size();
+            metrics.mItemsOut += count;
+
+            // Forward after timing so stages on the same thread are not counted twice.
+            if (mIndex + 1 < mRunners.length) {
+                StageRunner next = mRunners[mIndex + 1];
+                for (int i = 0; i < count; i++) next.enqueue(mOutput.get(i));
+            } else {
+                for (int i = 0; i < count; i++) mOutput.get(i).recycle();
+            }
+            mOutput.clear();
+        }
+    }
+
+    /**
+     * Splits raw data into one frame for every capture report it contains, other messages are dropped.
+     */
+    public static class DecodeStage implements Stage {
+
+        @Override
+        public void process(Frame frame, Output output) {
+            if (frame.buffer == null) {
+                output.emit(frame);
+                return;
+            }
+
+            List<HIDMessage> hidMessages = HIDUtilities.parseBuffer(frame.buffer, frame.length);
+            frame.recycle();
+            if (hidMessages == null) return;
+            for (HIDMessage hidMessage : hidMessages) {
+                if (hidMessage == null) {
+                    Log.e(TAG, "was unable to parse the returned message from the Sync");
+                } else if (hidMessage instanceof SyncCaptureReport) {
+                    Frame report = Frame.obtain();
+                    report.captureReport = (SyncCaptureReport) hidMessage;
+                    output.emit(report);
+                }
+            }
+        }
+    }
+
+    /**
+     * Drops a capture report that repeats the position, pressure and flags of the report before it, which is what the
+     * Boogie Board Sync sends while the stylus rests in range.
+     */
+    public static class CoalesceStage implements Stage {
+        private SyncCaptureReport mLast;
+
+        @Override
+        public void process(Frame frame, Output output) {
+            SyncCaptureReport report = frame.captureReport;
+            if (report != null && mLast != null && report.getX() == mLast.getX() && report.getY() == mLast.getY()
+                    && report.getPressure() == mLast.getPressure() && report.getFlags() == mLast.getFlags()) {
+                frame.recycle();
+                return;
+            }
+            if (report != null) mLast = report;
+            output.emit(frame);
+        }
+    }
+
+    /**
+     * Filters the capture report of a frame into its segments and optionally predicts the segment ahead of them.
+     */
+    public static class FilterStage implements Stage {
+        private final Filtering mFiltering;
+        private volatile int mPredictionSamples;
+
+        public FilterStage(Filtering filtering) {
+            mFiltering = filtering;
+        }
+
+        /**
+         * @param samples sample intervals to predict ahead, 0 to disable prediction
+         */
+        public void setPredictionSamples(int samples) {
+            mPredictionSamples = samples;
+        }
+
+        @Override
+        public void process(Frame frame, Output output) {
+            if (frame.captureReport != null) {
+                frame.segmentCount = mFiltering.filterCaptureReport(frame.captureReport, frame.segments, 0);
+                frame.pathState = mFiltering.getPathState();
+                int samples = mPredictionSamples;
+                if (samples > 0) frame.predictionCount = mFiltering.predictSegment(samples, frame.prediction, 0);
+            }
+            output.emit(frame);
+        }
+    }
+
+    /**
+     * Builds the paths of a frame from its segments, mapped with a {@link SyncTransform}. The segments stay in digitizer
+     * units.
+     */
+    public static class TransformStage implements Stage {
+        private final float[] mSegments = new float[Filtering.MAX_SEGMENTS_PER_SAMPLE * Filtering.SEGMENT_SIZE];
+        private volatile SyncTransform mTransform;
+
+        public TransformStage(SyncTransform transform) {
+            mTransform = transform;
+        }
+
+        public void setTransform(SyncTransform transform) {
+            mTransform = transform;
+        }
+
+        public SyncTransform getTransform() {
+            return mTransform;
+        }
+
+        @Override
+        public void process(Frame frame, Output output) {
+            SyncTransform transform = mTransform;
+            if (frame.segmentCount > 0) {
+                transform.transformSegments(frame.segments, 0, mSegments, 0, frame.segmentCount);
+                List<SyncPath> paths = new ArrayList<SyncPath>(frame.segmentCount);
+                for (int i = 0; i < frame.segmentCount; i++) {
+                    paths.add(Filtering.createPath(mSegments, i * Filtering.SEGMENT_SIZE));
+                }
+                frame.paths = paths;
+            }
+            if (frame.predictionCount > 0) {
+                transform.transformSegments(frame.prediction, 0, mSegments, 0, 1);
+                frame.predictedPath = Filtering.createPath(mSegments, 0);
+            }
+            output.emit(frame);
+        }
+    }
+}
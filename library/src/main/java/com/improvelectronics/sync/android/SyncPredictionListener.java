@@ -0,0 +1,39 @@
+/*****************************************************************************
+ Copyright © 2014 Kent Displays, Inc.
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ****************************************************************************/
+
+package com.improvelectronics.sync.android;
+
+/**
+ * Interface definition for a callback when the predicted position of the stylus changes while drawing on the Boogie Board
+ * Sync. Predicted paths are provisional, each one replaces the previous prediction and should be drawn only until the next
+ * call.
+ */
+public interface SyncPredictionListener {
+
+    /**
+     * Called after every capture report with the provisional path from the last drawn point to the predicted stylus
+     * position.
+     *
+     * @param path predicted path, null if the stylus is not down and any previous prediction should be removed
+     */
+    public void onPredictedPath(SyncPath path);
+}
@@ -33,6 +33,7 @@ import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
+import android.graphics.PointF;
 import android.os.Binder;
 import android.os.Build;
 import android.os.Handler;
@@ -42,10 +43,9 @@ import android.os.Message;
 import android.util.Log;
 
 import com.improvelectronics.sync.Config;
-import com.improvelectronics.sync.hid.HIDMessage;
 import com.improvelectronics.sync.hid.HIDSetReport;
-import com.improvelectronics.sync.hid.HIDUtilities;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -56,6 +56,9 @@ import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
 import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * This service connects to the Boogie Board Sync devices and communicates with the Sync using a custom implementation of the HID protocol. All of the
@@ -76,12 +79,42 @@ public class SyncStreamingService extends Service {
     private BluetoothAdapter mBluetoothAdapter;
     private final IBinder mBinder = new SyncStreamingBinder();
     private List<SyncStreamingListener> mListeners;
+    private List<SyncPredictionListener> mPredictionListeners;
+    private List<SyncStrokeListener> mStrokeListeners;
+    private List<SyncPageListener> mPageListeners;
     private int mState, mMode;
     private ConnectThread mConnectThread;
     private ConnectedThread mConnectedThread;
     private AcceptThread mAcceptThread;
     private List<BluetoothDevice> mPairedDevices;
-    private List<SyncPath> mPaths;
+    private SyncFloatPath mInk;
+    private StrokeHistory mStrokeHistory;
+    private StrokeIndex mStrokeIndex;
+    private Filtering mFiltering;
+    private StrokeBuilder mStrokeBuilder;
+    private StrokeSimplifier mStrokeSimplifier;
+    private SyncTransform mTransform = SyncTransform.IDENTITY;
+    private int mPredictionSamples;
+    private SyncPipeline mPipeline;
+    private SyncPipeline.FilterStage mFilterStage;
+    private SyncPipeline.TransformStage mTransformStage;
+    private SyncPipeline.Configurator mPipelineConfigurator;
+    private StrokeProcessingPool mStrokeProcessingPool;
+    private SyncJournal mJournal;
+    private SyncPageHistory mPageHistory;
+
+    // Strokes were completed since the last page was sealed.
+    private boolean mPageChanged;
+
+    // Directory in the private files directory older pages are spilled to.
+    private static final String PAGES_DIRECTORY_NAME = "pages";
+
+    // File in the private files directory the samples of the current page are journaled to.
+    private static final String JOURNAL_FILE_NAME = "page.journal";
+    private boolean mHasPrediction;
+
+    // Default tolerance for simplifying strokes (5*0.01mm = 0.05mm).
+    private static final float DEFAULT_SIMPLIFICATION_TOLERANCE = 5.0f;
 
     // Used for updating the local time of the Sync.
     private static final int YEAR_OFFSET = 1980;
@@ -92,6 +125,20 @@ public class SyncStreamingService extends Service {
     private static final int MESSAGE_CONNECTED = 14;
     private static final int MESSAGE_CONNECTION_BROKEN = 15;
     private static final int MESSAGE_BLUETOOTH_HACK = 16;
+    private static final int MESSAGE_FILTER_CONFIG = 17;
+
+    // Flags of a sample drawing ink, the stylus is ready and touches the Sync.
+    private static final int CONTACT_FLAGS = 0x05;
+
+    // Stages sharing state with this service, run on the main thread whatever executor a configurator gave them.
+    private static final String[] MAIN_THREAD_STAGES = {SyncPipeline.STAGE_JOURNAL, SyncPipeline.STAGE_FILTER,
+            SyncPipeline.STAGE_SIMPLIFY, SyncPipeline.STAGE_STORE, SyncPipeline.STAGE_DISPATCH};
+
+    // Builds the lookup tables of filter configurations one at a time, in the order they were set.
+    private ExecutorService mFilterConfigExecutor;
+
+    // Configuration whose lookup tables are being built, only accessed on the main thread.
+    private FilterConfig mPendingFilterConfig;
 
     /**
      * The Sync streaming service is in connected state.
@@ -176,8 +223,29 @@ public class SyncStreamingService extends Service {
         mBluetoothAdapter = BluetoothAdapter.getDefaultAdapter();
         mMessageHandler = new MessageHandler(Looper.getMainLooper());
         mPairedDevices = new ArrayList<BluetoothDevice>();
-        mPaths = new ArrayList<SyncPath>();
+        mInk = new SyncFloatPath(true);
+        mStrokeHistory = new StrokeHistory();
+        mStrokeIndex = new StrokeIndex();
+        mFiltering = new Filtering();
+        mStrokeSimplifier = new StrokeSimplifier(DEFAULT_SIMPLIFICATION_TOLERANCE, mStrokeListener);
+        mStrokeBuilder = new StrokeBuilder(mStrokeSimplifier);
         mListeners = new ArrayList<SyncStreamingListener>();
+        mPredictionListeners = new ArrayList<SyncPredictionListener>();
+        mStrokeListeners = new ArrayList<SyncStrokeListener>();
+        mPageListeners = new ArrayList<SyncPageListener>();
+        mPageHistory = new SyncPageHistory(new File(getFilesDir(), PAGES_DIRECTORY_NAME));
+        try {
+            mJournal = new SyncJournal(new File(getFilesDir(), JOURNAL_FILE_NAME));
+        } catch (IOException e) {
+            Log.e(TAG, "unable to open the page journal, the page will not survive a restart", e);
+        }
+        mPipeline = createPipeline();
+        mStrokeProcessingPool = new StrokeProcessingPool(new Executor() {
+            @Override
+            public void execute(Runnable runnable) {
+                mMessageHandler.post(runnable);
+            }
+        });
         mState = STATE_DISCONNECTED;
         mMode = MODE_NONE;
         setupIntentFilter();
@@ -205,6 +273,10 @@ public class SyncStreamingService extends Service {
 
         // Stop all running threads.
         stop();
+        mStrokeProcessingPool.shutdown();
+        mPageHistory.shutdown();
+        if (mFilterConfigExecutor != null) mFilterConfigExecutor.shutdown();
+        if (mJournal != null) mJournal.close();
 
         // Clean up receivers.
         unregisterReceiver(mMessageReceiver);
@@ -392,8 +464,12 @@ public class SyncStreamingService extends Service {
 
         if (DEBUG) Log.d(TAG, "writing message to erase Boogie Board Sync's screen");
 
-        // Clean up paths.
-        mPaths.clear();
+        // Keep the page and clean up paths.
+        sealPage(SyncPage.REASON_ERASE);
+        if (mJournal != null) mJournal.clear();
+        mInk.reset();
+        mStrokeHistory.reset();
+        mStrokeIndex.clear();
 
         // Create the HID message to be sent to the Sync to erase the screen.
         byte ERASE_MODE = 0x01;
@@ -458,12 +534,227 @@ public class SyncStreamingService extends Service {
     }
 
     /**
-     * Returns a list of paths that the Sync currently have drawn on it.
+     * Returns a list of paths that the Sync currently have drawn on it, one for every segment.
      *
-     * @return paths
+     * @return new paths
+     * @deprecated the paths are created on every call from {@link #getInkPath()}, which keeps the ink without an Android
+     * graphics path and boxed points for every segment
      */
+    @Deprecated
     public List<SyncPath> getPaths() {
-        return mPaths;
+        return mInk.toSegmentPaths();
+    }
+
+    /**
+     * Returns the ink that the Sync currently has drawn on it, in the coordinates of the transform set with
+     * {@link #setTransform(SyncTransform)}. Consecutive segments share a contour and the width of every segment is kept at
+     * its end point. The path is owned by this service and grows as ink is drawn, so it must only be read on the main
+     * thread.
+     *
+     * @return ink path
+     */
+    public SyncFloatPath getInkPath() {
+        return mInk;
+    }
+
+    /**
+     * Returns a list of completed strokes that the Sync currently have drawn on it. Each stroke holds every segment from a
+     * pen down to pen up, in digitizer units unlike the ink path returned from {@link #getInkPath()}. The list is an
+     * immutable snapshot that is not changed by later strokes or by {@link #undoStroke()}, so it can be kept without
+     * copying. Once handed to another thread, for example through an executor, the snapshot and its completed strokes,
+     * including their outlines and levels of detail, can be read there without locking. A stroke can be drawn through
+     * {@link SyncFloatPath#SyncFloatPath(SyncStroke)}.
+     *
+     * @return strokes
+     */
+    public StrokeVector getStrokes() {
+        return mStrokeHistory.getStrokes();
+    }
+
+    /**
+     * Removes the last completed stroke from the strokes returned by {@link #getStrokes()} and the spatial queries.
+     * The path returned from {@link #getInkPath()} and the ink on the Sync are not changed. Undo history is cleared when the
+     * Sync is erased.
+     *
+     * @return false if there was no stroke to undo
+     */
+    public boolean undoStroke() {
+        StrokeVector strokes = mStrokeHistory.getStrokes();
+        if (!mStrokeHistory.undo()) return false;
+        updateStrokeIndex(strokes, mStrokeHistory.getStrokes());
+        mPageChanged = true;
+        return true;
+    }
+
+    /**
+     * Restores the last stroke removed by {@link #undoStroke()}. Strokes can no longer be redone once a new stroke is
+     * completed.
+     *
+     * @return false if there was no stroke to redo
+     */
+    public boolean redoStroke() {
+        StrokeVector strokes = mStrokeHistory.getStrokes();
+        if (!mStrokeHistory.redo()) return false;
+        updateStrokeIndex(strokes, mStrokeHistory.getStrokes());
+        mPageChanged = true;
+        return true;
+    }
+
+    public boolean canUndoStroke() {
+        return mStrokeHistory.canUndo();
+    }
+
+    public boolean canRedoStroke() {
+        return mStrokeHistory.canRedo();
+    }
+
+    /**
+     * Sets how many completed strokes can be undone with {@link #undoStroke()}.
+     *
+     * @param levels number of strokes, {@link StrokeHistory#DEFAULT_MAX_UNDO_LEVELS} by default
+     */
+    public void setMaxUndoLevels(int levels) {
+        mStrokeHistory.setMaxUndoLevels(levels);
+    }
+
+    // Strokes are only appended, so versions differ by the strokes past the shorter one.
+    private void updateStrokeIndex(StrokeVector from, StrokeVector to) {
+        for (int i = to.size(); i < from.size(); i++) mStrokeIndex.remove(from.get(i));
+        for (int i = from.size(); i < to.size(); i++) mStrokeIndex.add(to.get(i));
+    }
+
+    /**
+     * Returns the completed strokes whose ink may be visible in a rectangle, found through a spatial index instead of
+     * scanning every stroke.
+     *
+     * @param left   left edge in digitizer units
+     * @param top    top edge in digitizer units
+     * @param right  right edge in digitizer units
+     * @param bottom bottom edge in digitizer units
+     * @return strokes whose bounding box intersects the rectangle, in the order they were drawn
+     */
+    public List<SyncStroke> getStrokes(float left, float top, float right, float bottom) {
+        return mStrokeIndex.query(left, top, right, bottom);
+    }
+
+    /**
+     * Returns the completed strokes whose ink passes within a distance of a point, for example to find the strokes
+     * under an eraser or a tap.
+     *
+     * @param x      x coordinate in digitizer units
+     * @param y      y coordinate in digitizer units
+     * @param radius distance from the point in digitizer units
+     * @return strokes that were hit, in the order they were drawn
+     */
+    public List<SyncStroke> hitTestStrokes(float x, float y, float radius) {
+        return mStrokeIndex.hitTest(x, y, radius, new ArrayList<SyncStroke>());
+    }
+
+    /**
+     * Returns the completed strokes at the level of detail needed to draw them at the given scale, so previews and
+     * thumbnails do not pay for vertices that cannot be seen. See {@link SyncStroke#getLevelOfDetail(float)}.
+     *
+     * @param scale output pixels per digitizer unit
+     * @return strokes
+     */
+    public List<SyncStroke> getStrokes(float scale) {
+        StrokeVector completed = mStrokeHistory.getStrokes();
+        List<SyncStroke> strokes = new ArrayList<>(completed.size());
+        for (SyncStroke stroke : completed) {
+            strokes.add(stroke.getLevelOfDetail(scale));
+        }
+        return strokes;
+    }
+
+    /**
+     * Returns the pages sealed this session each time the erase or save button was pushed, so the ink is kept after
+     * the Sync is erased. Only the newest pages are held in memory, see {@link #setPageRetention(int, int)}.
+     *
+     * @return pages from the oldest to the newest
+     */
+    public List<SyncPage> getPages() {
+        return mPageHistory.getPages();
+    }
+
+    /**
+     * Sets how many sealed pages are kept. Pages that no longer fit in memory are spilled to private storage and the
+     * oldest pages are dropped once the maximum is reached.
+     *
+     * @param maxPagesInMemory number of newest pages kept in memory, {@link SyncPageHistory#DEFAULT_MAX_PAGES_IN_MEMORY}
+     *                         by default
+     * @param maxPages         number of pages kept in total, {@link SyncPageHistory#DEFAULT_MAX_PAGES} by default
+     */
+    public void setPageRetention(int maxPagesInMemory, int maxPages) {
+        mPageHistory.setRetention(maxPagesInMemory, maxPages);
+    }
+
+    /**
+     * Sets the transform applied to paths before they are passed to listeners and stored for {@link #getInkPath()}, so
+     * they arrive in view or document coordinates. Paths that were already drawn keep their coordinates and strokes
+     * returned from {@link #getStrokes()} stay in digitizer units.
+     *
+     * @param transform transform from digitizer coordinates, {@link SyncTransform#IDENTITY} by default
+     */
+    public void setTransform(SyncTransform transform) {
+        mTransform = transform != null ? transform : SyncTransform.IDENTITY;
+        mTransformStage.setTransform(mTransform);
+    }
+
+    public SyncTransform getTransform() {
+        return mTransform;
+    }
+
+    /**
+     * Sets the smoothing filter used for paths drawn on this connection. A stroke that is being drawn keeps its current
+     * filter, the new one is used starting with the next stroke.
+     *
+     * @param smoothingFilter dynamic filter applied to every sample, for example a {@link PDSmoothingFilter} (default),
+     *                        {@link OneEuroSmoothingFilter} or {@link KalmanSmoothingFilter}
+     */
+    public void setSmoothingFilter(SmoothingFilter smoothingFilter) {
+        mFiltering.setSmoothingFilter(smoothingFilter);
+    }
+
+    /**
+     * Swaps the parameters used to filter paths on this connection. The lookup tables of the configuration are built on a
+     * background thread and a stroke that is being drawn finishes with the old configuration, the new one is used starting
+     * with the next stroke.
+     *
+     * @param config parameters of the filter
+     */
+    public void setFilterConfig(final FilterConfig config) {
+        if (config == null) throw new IllegalArgumentException("filter config cannot be null");
+
+        mPendingFilterConfig = config;
+        if (mFilterConfigExecutor == null) mFilterConfigExecutor = Executors.newSingleThreadExecutor();
+        mFilterConfigExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                config.prepare();
+                mMessageHandler.obtainMessage(MESSAGE_FILTER_CONFIG, config).sendToTarget();
+            }
+        });
+    }
+
+    /**
+     * Returns the parameters used to filter paths on this connection, including a configuration that is waiting for the
+     * current stroke to finish.
+     *
+     * @return configuration
+     */
+    public FilterConfig getFilterConfig() {
+        if (mPendingFilterConfig != null) return mPendingFilterConfig;
+        return mFiltering.getFilterConfig();
+    }
+
+    /**
+     * Sets how far, in digitizer units, the vertices of strokes returned from {@link #getStrokes()} may be moved when
+     * nearly collinear vertices are removed. A tolerance of zero only removes exactly collinear vertices.
+     *
+     * @param tolerance simplification tolerance, takes effect with the next stroke
+     */
+    public void setSimplificationTolerance(float tolerance) {
+        mStrokeSimplifier.setTolerance(tolerance);
     }
 
     /**
@@ -523,6 +814,317 @@ public class SyncStreamingService extends Service {
         return true;
     }
 
+    /**
+     * Adds a listener for the lifecycle of strokes. Remember to remove the listener with
+     * {@link #removeStrokeListener(SyncStrokeListener)} when finished.
+     *
+     * @param listener Class that implements SyncStrokeListener for asynchronous callbacks.
+     * @return false indicates listener has already been added
+     */
+    public boolean addStrokeListener(SyncStrokeListener listener) {
+        if (mStrokeListeners.contains(listener)) return false;
+        else mStrokeListeners.add(listener);
+        return true;
+    }
+
+    /**
+     * Removes a listener that was previously added with {@link #addStrokeListener(SyncStrokeListener)}.
+     *
+     * @param listener Class that implements SyncStrokeListener for asynchronous callbacks.
+     * @return false indicates listener was not originally added
+     */
+    public boolean removeStrokeListener(SyncStrokeListener listener) {
+        if (!mStrokeListeners.contains(listener)) return false;
+        else mStrokeListeners.remove(listener);
+        return true;
+    }
+
+    /**
+     * Adds a listener for pages sealed when the erase or save button is pushed. Remember to remove the listener with
+     * {@link #removePageListener(SyncPageListener)} when finished.
+     *
+     * @param listener Class that implements SyncPageListener for asynchronous callbacks.
+     * @return false indicates listener has already been added
+     */
+    public boolean addPageListener(SyncPageListener listener) {
+        if (mPageListeners.contains(listener)) return false;
+        else mPageListeners.add(listener);
+        return true;
+    }
+
+    /**
+     * Removes a listener that was previously added with {@link #addPageListener(SyncPageListener)}.
+     *
+     * @param listener Class that implements SyncPageListener for asynchronous callbacks.
+     * @return false indicates listener was not originally added
+     */
+    public boolean removePageListener(SyncPageListener listener) {
+        if (!mPageListeners.contains(listener)) return false;
+        else mPageListeners.remove(listener);
+        return true;
+    }
+
+    /**
+     * Adds a processor that is run on a background worker pool for every stroke completed after this call, for example
+     * {@link StrokeStatistics#PROCESSOR}, {@link StrokeProcessingPool#OUTLINE} or
+     * {@link StrokeProcessingPool#curveFitting(float)}. Results are reported to listeners added with
+     * {@link #addStrokeProcessingListener(SyncStrokeProcessingListener)}.
+     *
+     * @param processor processor to run
+     * @return false indicates processor has already been added
+     */
+    public boolean addStrokeProcessor(StrokeProcessor<?> processor) {
+        return mStrokeProcessingPool.addProcessor(processor);
+    }
+
+    /**
+     * Removes a processor that was previously added with {@link #addStrokeProcessor(StrokeProcessor)}.
+     *
+     * @param processor processor to remove
+     * @return false indicates processor was not originally added
+     */
+    public boolean removeStrokeProcessor(StrokeProcessor<?> processor) {
+        return mStrokeProcessingPool.removeProcessor(processor);
+    }
+
+    /**
+     * Adds a listener for results of stroke processors. Remember to remove the listener with
+     * {@link #removeStrokeProcessingListener(SyncStrokeProcessingListener)} when finished.
+     *
+     * @param listener Class that implements SyncStrokeProcessingListener for asynchronous callbacks.
+     * @return false indicates listener has already been added
+     */
+    public boolean addStrokeProcessingListener(SyncStrokeProcessingListener listener) {
+        return mStrokeProcessingPool.addListener(listener);
+    }
+
+    /**
+     * Removes a listener that was previously added with
+     * {@link #addStrokeProcessingListener(SyncStrokeProcessingListener)}.
+     *
+     * @param listener Class that implements SyncStrokeProcessingListener for asynchronous callbacks.
+     * @return false indicates listener was not originally added
+     */
+    public boolean removeStrokeProcessingListener(SyncStrokeProcessingListener listener) {
+        return mStrokeProcessingPool.removeListener(listener);
+    }
+
+    /**
+     * Adds a listener for predicted stylus positions, only called while prediction is enabled with
+     * {@link #setPredictionSamples(int)}. Remember to remove the listener with
+     * {@link #removePredictionListener(SyncPredictionListener)} when finished.
+     *
+     * @param listener Class that implements SyncPredictionListener for asynchronous callbacks.
+     * @return false indicates listener has already been added
+     */
+    public boolean addPredictionListener(SyncPredictionListener listener) {
+        if (mPredictionListeners.contains(listener)) return false;
+        else mPredictionListeners.add(listener);
+        return true;
+    }
+
+    /**
+     * Removes a listener that was previously added with {@link #addPredictionListener(SyncPredictionListener)}.
+     *
+     * @param listener Class that implements SyncPredictionListener for asynchronous callbacks.
+     * @return false indicates listener was not originally added
+     */
+    public boolean removePredictionListener(SyncPredictionListener listener) {
+        if (!mPredictionListeners.contains(listener)) return false;
+        else mPredictionListeners.remove(listener);
+        return true;
+    }
+
+    /**
+     * Sets how many sample intervals (about 7 ms each) the stylus position is extrapolated ahead of the filtered ink to
+     * hide latency. Predicted paths are reported to listeners added with
+     * {@link #addPredictionListener(SyncPredictionListener)}.
+     *
+     * @param samples 1 to {@link Filtering#MAX_PREDICTION_SAMPLES}, or 0 to disable prediction (default)
+     */
+    public void setPredictionSamples(int samples) {
+        if (samples < 0 || samples > Filtering.MAX_PREDICTION_SAMPLES) {
+            throw new IllegalArgumentException("can only predict 0 to " + Filtering.MAX_PREDICTION_SAMPLES + " samples ahead");
+        }
+        mPredictionSamples = samples;
+        mFilterStage.setPredictionSamples(samples);
+    }
+
+    /**
+     * Sets a configurator that can insert, remove or move stages of the pipeline processing data from the Boogie Board
+     * Sync. The pipeline is composed when a device connects, so the configurator takes effect with the next connection.
+     * The journal, filter, simplify, store and dispatch stages share their state with this service, which configures,
+     * resets and restores them on the main thread, so they always run on the main thread whatever executor the
+     * configurator gave them or the stages before them. Other stages, such as decode and transform, may be moved.
+     *
+     * @param configurator configurator, or null to use the default pipeline
+     */
+    public void setPipelineConfigurator(SyncPipeline.Configurator configurator) {
+        mPipelineConfigurator = configurator;
+    }
+
+    /**
+     * Returns the pipeline processing data of the current connection, for example to read the metrics of its stages.
+     *
+     * @return pipeline
+     */
+    public SyncPipeline getPipeline() {
+        return mPipeline;
+    }
+
+    /**
+     * Composes the default pipeline: decode, journal, filter, simplify, transform, store and dispatch, all on the main
+     * thread. Stages a configurator moved off the main thread hand their frames back to it before the next stage that
+     * shares state with this service.
+     */
+    private SyncPipeline createPipeline() {
+        mFilterStage = new SyncPipeline.FilterStage(mFiltering);
+        mFilterStage.setPredictionSamples(mPredictionSamples);
+        mTransformStage = new SyncPipeline.TransformStage(mTransform);
+
+        SyncPipeline.Builder builder = new SyncPipeline.Builder()
+                .addStage(SyncPipeline.STAGE_DECODE, new SyncPipeline.DecodeStage());
+        if (mJournal != null) builder.addStage(SyncPipeline.STAGE_JOURNAL, mJournal);
+        builder.addStage(SyncPipeline.STAGE_FILTER, mFilterStage)
+                .addStage(SyncPipeline.STAGE_SIMPLIFY, mSimplifyStage)
+                .addStage(SyncPipeline.STAGE_TRANSFORM, mTransformStage)
+                .addStage(SyncPipeline.STAGE_STORE, mStoreStage)
+                .addStage(SyncPipeline.STAGE_DISPATCH, mDispatchStage);
+        if (mPipelineConfigurator != null) mPipelineConfigurator.configure(builder);
+        for (String name : MAIN_THREAD_STAGES) {
+            if (builder.hasStage(name)) builder.setExecutor(name, mMainThreadExecutor);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Rebuilds the page left by a crash or a lost connection by passing the journaled samples through the pipeline.
+     * Listeners are called for the restored paths and strokes but not for the replayed capture reports. The frames are
+     * marked as replayed rather than the journal or the service being switched into a restoring state, since a stage
+     * moved onto an executor may still be handling them after this returns.
+     */
+    private void restoreFromJournal() {
+        if (mJournal == null || mJournal.getSampleCount() == 0) return;
+        if (DEBUG) Log.d(TAG, "restoring " + mJournal.getSampleCount() + " samples from the page journal");
+
+        int[] samples = mJournal.readSamples();
+        for (int i = 0; i < samples.length; i += Filtering.SAMPLE_SIZE) {
+            submitReplayed(samples, i);
+        }
+
+        // The journal ended with the stylus down, lift it so the stroke is completed. The lift is journaled so a later
+        // restore does not join this stroke with the next one. The journal runs on this thread, see MAIN_THREAD_STAGES.
+        int last = samples.length - Filtering.SAMPLE_SIZE;
+        if ((samples[last + 3] & CONTACT_FLAGS) == CONTACT_FLAGS) {
+            int[] lift = {samples[last], samples[last + 1], 0, 0};
+            mJournal.append(lift[0], lift[1], lift[2], lift[3]);
+            submitReplayed(lift, 0);
+        }
+    }
+
+    private void submitReplayed(int[] samples, int offset) {
+        SyncPipeline.Frame frame = SyncPipeline.Frame.obtain();
+        frame.captureReport = SyncJournal.createCaptureReport(samples, offset);
+        frame.replayed = true;
+        mPipeline.submit(frame);
+    }
+
+    /**
+     * Seals the completed strokes into a page of the history, unless no stroke was completed since the last page.
+     */
+    private void sealPage(int reason) {
+        StrokeVector strokes = mStrokeHistory.getStrokes();
+        if (!mPageChanged || strokes.isEmpty()) return;
+        mPageChanged = false;
+
+        SyncPage page = mPageHistory.seal(strokes, reason);
+        if (DEBUG) Log.d(TAG, "sealed page " + page.getNumber() + " with " + page.getStrokeCount() + " strokes");
+        for (SyncPageListener listener : mPageListeners) listener.onPageSealed(page);
+    }
+
+    // Runs a stage right away when the frame is already on the main thread, otherwise posts it there. Frames from a
+    // stage on another executor all arrive from that executor, so their order is kept.
+    private final Executor mMainThreadExecutor = new Executor() {
+        @Override
+        public void execute(Runnable runnable) {
+            if (Looper.myLooper() == Looper.getMainLooper()) {
+                runnable.run();
+            } else {
+                mMessageHandler.post(runnable);
+            }
+        }
+    };
+
+    // Appends the segments of a frame to the current stroke and finishes it once the stylus is lifted.
+    private final SyncPipeline.Stage mSimplifyStage = new SyncPipeline.Stage() {
+        @Override
+        public void process(SyncPipeline.Frame frame, SyncPipeline.Output output) {
+            if (frame.segmentCount > 0) mStrokeBuilder.appendSegments(frame.segments, 0, frame.segmentCount);
+            if (frame.pathState == Filtering.PathState.NO_POINTS) mStrokeBuilder.endStroke();
+            output.emit(frame);
+        }
+    };
+
+    // Keeps the paths drawn on the Sync, sealing the strokes into a page when the erase or save button is pushed and
+    // clearing them along with the paths on erase.
+    private final SyncPipeline.Stage mStoreStage = new SyncPipeline.Stage() {
+        @Override
+        public void process(SyncPipeline.Frame frame, SyncPipeline.Output output) {
+            for (int i = 0; i < frame.paths.size(); i++) {
+                SyncPath path = frame.paths.get(i);
+                PointF start = path.getPoints().get(0), end = path.getPoints().get(1);
+                mInk.addSegment(start.x, start.y, end.x, end.y, path.getStrokeWidth());
+            }
+            if (frame.captureReport != null && frame.captureReport.hasSaveFlag()) {
+                sealPage(SyncPage.REASON_SAVE);
+            }
+            if (frame.captureReport != null && frame.captureReport.hasEraseSwitchFlag()) {
+                sealPage(SyncPage.REASON_ERASE);
+                mInk.reset();
+                mStrokeHistory.reset();
+                mStrokeIndex.clear();
+            }
+            output.emit(frame);
+        }
+    };
+
+    // Calls the listeners for the capture report, paths, prediction and buttons of a frame.
+    private final SyncPipeline.Stage mDispatchStage = new SyncPipeline.Stage() {
+        @Override
+        public void process(SyncPipeline.Frame frame, SyncPipeline.Output output) {
+            SyncCaptureReport captureReport = frame.captureReport;
+            if (captureReport != null && !frame.replayed) {
+                for (SyncStreamingListener listener : mListeners) listener.onCaptureReport(captureReport);
+            }
+
+            if (!frame.paths.isEmpty()) {
+                for (SyncStreamingListener listener : mListeners) listener.onDrawnPaths(frame.paths);
+            }
+
+            // Replace the previous prediction now that a real sample arrived.
+            if (mPredictionSamples > 0 && !mPredictionListeners.isEmpty() && (frame.predictedPath != null || mHasPrediction)) {
+                mHasPrediction = frame.predictedPath != null;
+                for (SyncPredictionListener listener : mPredictionListeners) listener.onPredictedPath(frame.predictedPath);
+            }
+
+            if (captureReport != null) {
+                // Erase button was pushed.
+                if (captureReport.hasEraseSwitchFlag()) {
+                    for (SyncStreamingListener listener : mListeners) listener.onErase();
+                }
+
+                // Save button was pushed.
+                if (captureReport.hasSaveFlag()) {
+                    for (SyncStreamingListener listener : mListeners) listener.onSave();
+
+                    // Dispatch a broadcast.
+                    broadcastButtonPush(SAVE_BUTTON);
+                }
+            }
+            output.emit(frame);
+        }
+    };
+
     private void setupIntentFilter() {
         IntentFilter intentFilter = new IntentFilter();
         intentFilter.addAction(BluetoothAdapter.ACTION_STATE_CHANGED);
@@ -548,8 +1150,15 @@ public class SyncStreamingService extends Service {
         if (newState == STATE_DISCONNECTED) {
             // Reset the mode of the Boogie Board Sync.
             mMode = MODE_NONE;
-            mPaths.clear();
+            mInk.reset();
+            mStrokeHistory.reset();
+            mStrokeIndex.clear();
+            mFiltering.reset();
+            mStrokeBuilder.reset();
+            mStrokeSimplifier.reset();
         } else if (newState == STATE_CONNECTED) {
+            mPipeline = createPipeline();
+            restoreFromJournal();
             setSyncMode(MODE_FILE);
             updateSyncTimeWithLocalTime();
             informSyncOfDevice();
@@ -572,45 +1181,7 @@ public class SyncStreamingService extends Service {
         public void handleMessage(Message message) {
             // Parse the message that was returned from the background thread.
             if (message.what == MESSAGE_DATA) {
-                byte[] buffer = (byte[]) message.obj;
-                int numBytes = message.arg1;
-
-                List<HIDMessage> hidMessages = HIDUtilities.parseBuffer(buffer, numBytes);
-
-                if (hidMessages == null) return;
-
-                // Received a capture report.
-                for (HIDMessage hidMessage : hidMessages) {
-                    if (hidMessage == null) {
-                        Log.e(TAG, "was unable to parse the returned message from the Sync");
-                    } else if (hidMessage instanceof SyncCaptureReport) {
-                        SyncCaptureReport captureReport = (SyncCaptureReport) hidMessage;
-                        for (SyncStreamingListener listener : mListeners)
-                            listener.onCaptureReport(captureReport);
-
-                        // Filter the paths that are returned from the Boogie Board Sync.
-                        List<SyncPath> paths = Filtering.filterSyncCaptureReport(captureReport);
-                        if (paths.size() > 0) {
-                            for (SyncStreamingListener listener : mListeners)
-                                listener.onDrawnPaths(paths);
-                            mPaths.addAll(paths);
-                        }
-
-                        // Erase button was pushed.
-                        if (captureReport.hasEraseSwitchFlag()) {
-                            mPaths.clear();
-                            for (SyncStreamingListener listener : mListeners) listener.onErase();
-                        }
-
-                        // Save button was pushed.
-                        if (captureReport.hasSaveFlag()) {
-                            for (SyncStreamingListener listener : mListeners) listener.onSave();
-
-                            // Dispatch a broadcast.
-                            broadcastButtonPush(SAVE_BUTTON);
-                        }
-                    }
-                }
+                mPipeline.submit(SyncPipeline.Frame.obtain((byte[]) message.obj, message.arg1));
             }
 
             // Connected to a device from the accept or connect thread.
@@ -629,6 +1200,14 @@ public class SyncStreamingService extends Service {
                 stopBluetoothHack(); // Don't need to keep transmitting hack.
             }
 
+            // Lookup tables of a new filter configuration were built.
+            // A configuration that was replaced before its tables were built is dropped.
+            else if (message.what == MESSAGE_FILTER_CONFIG) {
+                if (message.obj != mPendingFilterConfig) return;
+                mPendingFilterConfig = null;
+                mFiltering.setFilterConfig((FilterConfig) message.obj);
+            }
+
             // Bluetooth hack, see reference below.
             else if (message.what == MESSAGE_BLUETOOTH_HACK) {
                 // Only transmit, if we are in capture mode.
@@ -641,6 +1220,27 @@ public class SyncStreamingService extends Service {
         }
     }
 
+    private final StrokeBuilder.StrokeListener mStrokeListener = new StrokeBuilder.StrokeListener() {
+        @Override
+        public void onStrokeUpdated(SyncStroke stroke, int firstVertexIndex) {
+            if (firstVertexIndex == 0) {
+                for (SyncStrokeListener listener : mStrokeListeners) listener.onStrokeStart(stroke);
+            }
+            for (SyncStrokeListener listener : mStrokeListeners) listener.onStrokeAppend(stroke, firstVertexIndex);
+        }
+
+        @Override
+        public void onStrokeCompleted(SyncStroke stroke) {
+            mStrokeHistory.add(stroke);
+            mStrokeIndex.add(stroke);
+            mPageChanged = true;
+            for (SyncStrokeListener listener : mStrokeListeners) listener.onStrokeEnd(stroke);
+
+            // Heavy work on the stroke runs on the worker pool, off the live ink path.
+            mStrokeProcessingPool.submit(stroke);
+        }
+    };
+
     private final BroadcastReceiver mMessageReceiver = new BroadcastReceiver() {
         @Override
         public void onReceive(Context context, Intent intent) {
@@ -0,0 +1,244 @@
+/*******************************************************************************
+ Copyright © 2014 Kent Displays, Inc.
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ******************************************************************************/
+
+package com.improvelectronics.sync.android;
+
+import java.util.Arrays;
+
+/**
+ * A single trace drawn on the Boogie Board Sync from pen down to pen up, stored as one polyline with a line width for
+ * every vertex. Vertices are kept in a growable float array of x, y and width triples expressed in digitizer units.
+ * <p/>
+ * A completed stroke is never changed, so it can be read from any thread it was handed to. Its outline and levels of
+ * detail are built lazily and published safely, so they may be requested from several threads at once.
+ */
+public class SyncStroke {
+
+    /**
+     * Number of floats stored for each vertex: x, y and width.
+     */
+    public static final int VERTEX_SIZE = 3;
+
+    private static final int INITIAL_CAPACITY = 32;
+
+    /**
+     * Simplification tolerances in digitizer units of the levels of detail returned from {@link #getLevelOfDetail(float)},
+     * from finest to coarsest.
+     */
+    private static final float[] LOD_TOLERANCES = {8f, 32f, 128f, 512f};
+
+    /**
+     * Largest error in output pixels accepted when choosing a level of detail.
+     */
+    private static final float LOD_PIXEL_ERROR = 0.5f;
+
+    private final long mId;
+    private final long mStartTime;
+    private long mEndTime;
+
+    private float[] mVertices;
+    private int mVertexCount;
+    private boolean mCompleted;
+
+    // Caches built on first use. Levels are replaced by a copy when one is added, so a reader never sees a partly
+    // filled array.
+    private volatile StrokeOutline mOutline;
+    private volatile SyncStroke[] mLevels;
+
+    // Bounding box of the ink, including half of the line width around every vertex.
+    private float mLeft, mTop, mRight, mBottom;
+
+    public SyncStroke() {
+        this(0, System.currentTimeMillis());
+    }
+
+    /**
+     * @param id        identifier of the stroke
+     * @param startTime time the stroke was started in milliseconds since the epoch
+     */
+    public SyncStroke(long id, long startTime) {
+        mId = id;
+        mStartTime = startTime;
+        mEndTime = -1;
+        mVertices = new float[INITIAL_CAPACITY * VERTEX_SIZE];
+        mVertexCount = 0;
+        mCompleted = false;
+        resetBounds();
+    }
+
+    void addVertex(float x, float y, float width) {
+        int index = mVertexCount * VERTEX_SIZE;
+        if (index + VERTEX_SIZE > mVertices.length) {
+            mVertices = Arrays.copyOf(mVertices, mVertices.length * 2);
+        }
+        mVertices[index] = x;
+        mVertices[index + 1] = y;
+        mVertices[index + 2] = width;
+        mVertexCount++;
+        mOutline = null;
+        mLevels = null;
+
+        float radius = width / 2;
+        if (x - radius < mLeft) mLeft = x - radius;
+        if (y - radius < mTop) mTop = y - radius;
+        if (x + radius > mRight) mRight = x + radius;
+        if (y + radius > mBottom) mBottom = y + radius;
+    }
+
+    void complete(long endTime) {
+        mEndTime = endTime;
+        mCompleted = true;
+    }
+
+    private void resetBounds() {
+        mLeft = mTop = Float.MAX_VALUE;
+        mRight = mBottom = -Float.MAX_VALUE;
+    }
+
+    /**
+     * Returns the identifier of the stroke. Strokes reported by the {@link SyncStreamingService} have increasing
+     * identifiers in the order they were started.
+     *
+     * @return id
+     */
+    public long getId() {
+        return mId;
+    }
+
+    /**
+     * Returns the time the stylus touched the surface.
+     *
+     * @return start time in milliseconds since the epoch
+     */
+    public long getStartTime() {
+        return mStartTime;
+    }
+
+    /**
+     * Returns the time the stylus was lifted.
+     *
+     * @return end time in milliseconds since the epoch, -1 if the stroke is not completed
+     */
+    public long getEndTime() {
+        return mEndTime;
+    }
+
+    /**
+     * Returns the left edge of the bounding box of the ink, which includes half the line width around every vertex.
+     *
+     * @return left edge in digitizer units, {@link Float#MAX_VALUE} if the stroke has no vertices
+     */
+    public float getLeft() {
+        return mLeft;
+    }
+
+    public float getTop() {
+        return mTop;
+    }
+
+    public float getRight() {
+        return mRight;
+    }
+
+    public float getBottom() {
+        return mBottom;
+    }
+
+    /**
+     * Returns true once the stylus has been lifted and no more vertices will be added.
+     *
+     * @return completed
+     */
+    public boolean isCompleted() {
+        return mCompleted;
+    }
+
+    public int getVertexCount() {
+        return mVertexCount;
+    }
+
+    public float getX(int index) {
+        return mVertices[index * VERTEX_SIZE];
+    }
+
+    public float getY(int index) {
+        return mVertices[index * VERTEX_SIZE + 1];
+    }
+
+    public float getWidth(int index) {
+        return mVertices[index * VERTEX_SIZE + 2];
+    }
+
+    /**
+     * Returns the outline polygon of the ink, tessellated the first time it is requested and kept until the stroke
+     * changes.
+     *
+     * @return outline
+     */
+    public StrokeOutline getOutline() {
+        StrokeOutline outline = mOutline;
+        if (outline == null) {
+            outline = StrokeOutline.create(this);
+            mOutline = outline;
+        }
+        return outline;
+    }
+
+    /**
+     * Returns a simplified version of this stroke with no more detail than can be seen when drawn at the given scale.
+     * Levels are simplified from this stroke the first time they are requested and kept until the stroke changes. A
+     * stroke that is not completed yet is always returned as is.
+     *
+     * @param scale output pixels per digitizer unit, for example the width of a thumbnail divided by
+     *              {@link SyncCaptureReport#MAX_X}
+     * @return this stroke or a simplified copy of it
+     */
+    public SyncStroke getLevelOfDetail(float scale) {
+        if (!mCompleted || scale <= 0) return this;
+
+        // Coarsest level whose error stays below the pixel error at this scale.
+        float tolerance = LOD_PIXEL_ERROR / scale;
+        int level = -1;
+        while (level + 1 < LOD_TOLERANCES.length && LOD_TOLERANCES[level + 1] <= tolerance) level++;
+        if (level < 0) return this;
+
+        SyncStroke[] levels = mLevels;
+        if (levels != null && levels[level] != null) return levels[level];
+
+        // Threads racing here build equal levels, the last one published wins.
+        SyncStroke simplified = StrokeSimplifier.simplify(this, LOD_TOLERANCES[level]);
+        levels = levels != null ? levels.clone() : new SyncStroke[LOD_TOLERANCES.length];
+        levels[level] = simplified;
+        mLevels = levels;
+        return simplified;
+    }
+
+    /**
+     * Returns the backing vertex array. Only the first {@link #getVertexCount()} * {@link #VERTEX_SIZE} values are valid
+     * and the array must not be modified.
+     *
+     * @return vertices
+     */
+    public float[] getVertices() {
+        return mVertices;
+    }
+}
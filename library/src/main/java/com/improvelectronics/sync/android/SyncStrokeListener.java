@@ -0,0 +1,57 @@
+/*****************************************************************************
+ Copyright © 2014 Kent Displays, Inc.
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ****************************************************************************/
+
+package com.improvelectronics.sync.android;
+
+/**
+ * Interface definition for a callback when a stroke is drawn on the Boogie Board Sync. Every stroke has an identifier
+ * that increases with each stroke, so consumers can index and export ink incrementally instead of rescanning
+ * {@link SyncStreamingService#getStrokes()}.
+ */
+public interface SyncStrokeListener {
+
+    /**
+     * Called when the stylus touched the surface and a new stroke was started.
+     *
+     * @param stroke stroke that was started, holding its first vertices
+     */
+    public void onStrokeStart(SyncStroke stroke);
+
+    /**
+     * Called when vertices were appended to a stroke that is being drawn. The bounding box of the stroke includes the new
+     * vertices.
+     *
+     * @param stroke           stroke that grew
+     * @param firstVertexIndex index of the first vertex that was appended
+     */
+    public void onStrokeAppend(SyncStroke stroke, int firstVertexIndex);
+
+    /**
+     * Called when the stylus was lifted and the stroke will not change anymore. The completed stroke may be a new object
+     * with the same identifier as the streamed one, holding the vertices of a final simplification pass, so it should
+     * replace the streamed stroke. Vertices already reported through {@link #onStrokeAppend(SyncStroke, int)} are not
+     * changed.
+     *
+     * @param stroke stroke that was completed
+     */
+    public void onStrokeEnd(SyncStroke stroke);
+}
@@ -0,0 +1,216 @@
+/*******************************************************************************
+ Copyright © 2014 Kent Displays, Inc.
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ******************************************************************************/
+
+package com.improvelectronics.sync.android;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.List;
+
+/**
+ * Base class of text document writers that stream strokes straight to an {@link OutputStream} or {@link Writer} without
+ * building the document in memory. Text goes through a small fixed buffer and numbers are written with an allocation
+ * free formatter. Strokes come from the stroke store, or are built from packed samples such as those of a
+ * {@link SyncJournal}, in which case only the stroke being drawn is held in memory.
+ */
+public abstract class SyncStrokeWriter {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final OutputStream mOutputStream;
+    private final Writer mWriter;
+    private final byte[] mBuffer = new byte[BUFFER_SIZE];
+    private char[] mChars;
+    private int mBufferSize;
+
+    // Builds strokes from samples, created on first use.
+    private SampleReplay mSampleReplay;
+    private StrokeBuilder mStrokeBuilder;
+    private SyncStroke mCompletedStroke;
+
+    private boolean mStarted;
+    private boolean mClosed;
+
+    /**
+     * @param out stream the document is written to as ASCII, not closed by the writer
+     */
+    protected SyncStrokeWriter(OutputStream out) {
+        mOutputStream = out;
+        mWriter = null;
+    }
+
+    /**
+     * @param writer writer the document is written to, not closed by the writer
+     */
+    protected SyncStrokeWriter(Writer writer) {
+        mOutputStream = null;
+        mWriter = writer;
+    }
+
+    /**
+     * Writes the start of the document, called before the first stroke.
+     */
+    protected abstract void writeHeader() throws IOException;
+
+    /**
+     * Writes a stroke.
+     */
+    protected abstract void writeStroke(SyncStroke stroke) throws IOException;
+
+    /**
+     * Writes the end of the document.
+     */
+    protected abstract void writeFooter() throws IOException;
+
+    /**
+     * Writes a stroke to the document.
+     *
+     * @param stroke stroke to write
+     * @throws IOException if the stroke could not be written
+     */
+    public void addStroke(SyncStroke stroke) throws IOException {
+        start();
+        if (stroke.getVertexCount() > 0) writeStroke(stroke);
+    }
+
+    /**
+     * Writes strokes to the document, for example those returned from {@link SyncStreamingService#getStrokes()}.
+     *
+     * @param strokes strokes to write
+     * @throws IOException if the strokes could not be written
+     */
+    public void addStrokes(List<SyncStroke> strokes) throws IOException {
+        for (int i = 0; i < strokes.size(); i++) addStroke(strokes.get(i));
+    }
+
+    /**
+     * Filters packed samples, for example read from a {@link SyncJournal}, and writes every stroke once the stylus is
+     * lifted. A stroke that is still being drawn is written on {@link #close()}.
+     *
+     * @param samples samples of {@link Filtering#SAMPLE_SIZE} ints (x, y, pressure, flags)
+     * @param offset  index in samples of the first sample
+     * @param count   number of samples
+     * @throws IOException if the strokes could not be written
+     */
+    public void addSamples(int[] samples, int offset, int count) throws IOException {
+        start();
+        if (mSampleReplay == null) {
+            mStrokeBuilder = new StrokeBuilder(new StrokeBuilder.StrokeListener() {
+                @Override
+                public void onStrokeUpdated(SyncStroke stroke, int firstVertexIndex) {
+                }
+
+                @Override
+                public void onStrokeCompleted(SyncStroke stroke) {
+                    mCompletedStroke = stroke;
+                }
+            });
+            mSampleReplay = new SampleReplay(new SampleReplay.Target() {
+                @Override
+                public void onSegments(float[] segments, int offset, int count) {
+                    mStrokeBuilder.appendSegments(segments, offset, count);
+                }
+
+                @Override
+                public void onPenUp() throws IOException {
+                    endStroke();
+                }
+            });
+        }
+        mSampleReplay.replay(samples, offset, count);
+    }
+
+    /**
+     * Finishes the document and flushes the output, which is not closed.
+     *
+     * @throws IOException if the document could not be written
+     */
+    public void close() throws IOException {
+        if (mClosed) return;
+        start();
+        if (mStrokeBuilder != null) endStroke();
+        writeFooter();
+        flush();
+        if (mOutputStream != null) mOutputStream.flush();
+        else mWriter.flush();
+        mClosed = true;
+    }
+
+    private void start() throws IOException {
+        if (mClosed) throw new IOException("writer is closed");
+        if (mStarted) return;
+        mStarted = true;
+        writeHeader();
+    }
+
+    // Finishes the stroke built from samples and writes it.
+    private void endStroke() throws IOException {
+        mStrokeBuilder.endStroke();
+        SyncStroke stroke = mCompletedStroke;
+        mCompletedStroke = null;
+        if (stroke != null) writeStroke(stroke);
+    }
+
+    /**
+     * Writes ASCII text.
+     */
+    protected void write(String text) throws IOException {
+        for (int i = 0; i < text.length(); i++) {
+            if (mBufferSize == mBuffer.length) flush();
+            mBuffer[mBufferSize++] = (byte) text.charAt(i);
+        }
+    }
+
+    protected void write(char c) throws IOException {
+        if (mBufferSize == mBuffer.length) flush();
+        mBuffer[mBufferSize++] = (byte) c;
+    }
+
+    /**
+     * Writes a number rounded to a number of fraction digits, without trailing zeros.
+     */
+    protected void writeNumber(float value, int decimals) throws IOException {
+        if (mBufferSize + DecimalFormatter.MAX_LENGTH > mBuffer.length) flush();
+        mBufferSize = DecimalFormatter.format(value, decimals, mBuffer, mBufferSize);
+    }
+
+    protected void writeInteger(long value) throws IOException {
+        if (mBufferSize + DecimalFormatter.MAX_LENGTH > mBuffer.length) flush();
+        if (value < 0) {
+            mBuffer[mBufferSize++] = '-';
+            value = -value;
+        }
+        mBufferSize = DecimalFormatter.formatInteger(value, mBuffer, mBufferSize);
+    }
+
+    private void flush() throws IOException {
+        if (mOutputStream != null) {
+            mOutputStream.write(mBuffer, 0, mBufferSize);
+        } else {
+            if (mChars == null) mChars = new char[BUFFER_SIZE];
+            for (int i = 0; i < mBufferSize; i++) mChars[i] = (char) (mBuffer[i] & 0xFF);
+            mWriter.write(mChars, 0, mBufferSize);
+        }
+        mBufferSize = 0;
+    }
+}
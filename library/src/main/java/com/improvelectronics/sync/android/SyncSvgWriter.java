@@ -0,0 +1,127 @@
+/*******************************************************************************
+ Copyright © 2014 Kent Displays, Inc.
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ******************************************************************************/
+
+package com.improvelectronics.sync.android;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+
+/**
+ * Streams strokes into an SVG document. Every stroke becomes a single filled path following its
+ * {@link StrokeOutline}, so the varying line width is kept. Coordinates are mapped with a {@link SyncTransform}, by
+ * default onto a page of {@link SyncUtilities#PDF_WIDTH} by {@link SyncUtilities#PDF_HEIGHT} units with the writing area
+ * turned upright.
+ */
+public class SyncSvgWriter extends SyncStrokeWriter {
+
+    // Digits kept after the decimal point of coordinates.
+    private static final int DECIMALS = 2;
+
+    private final float mWidth;
+    private final float mHeight;
+    private final SyncTransform mTransform;
+    private String mColor = "#000000";
+
+    public SyncSvgWriter(OutputStream out) {
+        this(out, SyncUtilities.PDF_WIDTH, SyncUtilities.PDF_HEIGHT,
+                SyncTransform.fit(SyncUtilities.PDF_WIDTH, SyncUtilities.PDF_HEIGHT, 90));
+    }
+
+    /**
+     * @param out       stream the document is written to, not closed by the writer
+     * @param width     width of the document
+     * @param height    height of the document
+     * @param transform transform from digitizer coordinates to document coordinates
+     */
+    public SyncSvgWriter(OutputStream out, float width, float height, SyncTransform transform) {
+        super(out);
+        mWidth = width;
+        mHeight = height;
+        mTransform = transform;
+    }
+
+    public SyncSvgWriter(Writer writer) {
+        this(writer, SyncUtilities.PDF_WIDTH, SyncUtilities.PDF_HEIGHT,
+                SyncTransform.fit(SyncUtilities.PDF_WIDTH, SyncUtilities.PDF_HEIGHT, 90));
+    }
+
+    /**
+     * @param writer    writer the document is written to, not closed by the writer
+     * @param width     width of the document
+     * @param height    height of the document
+     * @param transform transform from digitizer coordinates to document coordinates
+     */
+    public SyncSvgWriter(Writer writer, float width, float height, SyncTransform transform) {
+        super(writer);
+        mWidth = width;
+        mHeight = height;
+        mTransform = transform;
+    }
+
+    /**
+     * Sets the color of the ink, must be called before the first stroke is added.
+     *
+     * @param color RGB color
+     */
+    public void setColor(int color) {
+        mColor = String.format("#%06X", color & 0xFFFFFF);
+    }
+
+    @Override
+    protected void writeHeader() throws IOException {
+        write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"");
+        writeNumber(mWidth, DECIMALS);
+        write("\" height=\"");
+        writeNumber(mHeight, DECIMALS);
+        write("\" viewBox=\"0 0 ");
+        writeNumber(mWidth, DECIMALS);
+        write(' ');
+        writeNumber(mHeight, DECIMALS);
+        write("\">\n<g fill=\"" + mColor + "\" stroke=\"none\">\n");
+    }
+
+    @Override
+    protected void writeStroke(SyncStroke stroke) throws IOException {
+        StrokeOutline outline = stroke.getOutline();
+        int count = outline.getPointCount();
+        if (count == 0) return;
+
+        write("<path id=\"s");
+        writeInteger(stroke.getId());
+        write("\" d=\"M");
+        for (int i = 0; i < count; i++) {
+            if (i == 1) write('L');
+            else if (i > 1) write(' ');
+            float x = outline.getX(i), y = outline.getY(i);
+            writeNumber(mTransform.mapX(x, y), DECIMALS);
+            write(' ');
+            writeNumber(mTransform.mapY(x, y), DECIMALS);
+        }
+        write("Z\"/>\n");
+    }
+
+    @Override
+    protected void writeFooter() throws IOException {
+        write("</g>\n</svg>\n");
+    }
+}
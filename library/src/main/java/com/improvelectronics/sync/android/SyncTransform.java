@@ -0,0 +1,145 @@
+/*******************************************************************************
+ Copyright © 2014 Kent Displays, Inc.
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ******************************************************************************/
+
+package com.improvelectronics.sync.android;
+
+/**
+ * Immutable affine transform from digitizer coordinates of the Boogie Board Sync into view or document coordinates.
+ * Positions are mapped with the matrix and line widths are multiplied by its uniform scale, so filtered segments can be
+ * handed to listeners in their target space. Use {@link #fit(float, float, int)} to place the writing area in a view or
+ * in a PDF page of {@link SyncUtilities#PDF_WIDTH} by {@link SyncUtilities#PDF_HEIGHT} points.
+ */
+public final class SyncTransform {
+
+    /**
+     * Transform that keeps digitizer coordinates.
+     */
+    public static final SyncTransform IDENTITY = new SyncTransform(1, 0, 0, 0, 1, 0);
+
+    private final float mScaleX;
+    private final float mSkewX;
+    private final float mTranslateX;
+    private final float mSkewY;
+    private final float mScaleY;
+    private final float mTranslateY;
+    private final float mWidthScale;
+
+    /**
+     * Creates a transform from the values of its matrix, in the same order as {@link android.graphics.Matrix}. A point
+     * (x, y) is mapped to (scaleX * x + skewX * y + translateX, skewY * x + scaleY * y + translateY).
+     */
+    public SyncTransform(float scaleX, float skewX, float translateX, float skewY, float scaleY, float translateY) {
+        mScaleX = scaleX;
+        mSkewX = skewX;
+        mTranslateX = translateX;
+        mSkewY = skewY;
+        mScaleY = scaleY;
+        mTranslateY = translateY;
+        mWidthScale = (float) Math.sqrt(Math.abs(scaleX * scaleY - skewX * skewY));
+    }
+
+    /**
+     * Creates a transform that rotates the writing area clockwise by a multiple of 90 degrees, keeping it in positive
+     * coordinates, then scales it and offsets it.
+     *
+     * @param scale    target units per digitizer unit
+     * @param rotation clockwise rotation in degrees, one of 0, 90, 180 or 270
+     * @param offsetX  position of the left edge of the rotated writing area
+     * @param offsetY  position of the top edge of the rotated writing area
+     * @return transform
+     */
+    public static SyncTransform create(float scale, int rotation, float offsetX, float offsetY) {
+        float maxX = SyncCaptureReport.MAX_X, maxY = SyncCaptureReport.MAX_Y;
+        switch (rotation) {
+            case 0:
+                return new SyncTransform(scale, 0, offsetX, 0, scale, offsetY);
+            case 90:
+                return new SyncTransform(0, -scale, offsetX + maxY * scale, scale, 0, offsetY);
+            case 180:
+                return new SyncTransform(-scale, 0, offsetX + maxX * scale, 0, -scale, offsetY + maxY * scale);
+            case 270:
+                return new SyncTransform(0, scale, offsetX, -scale, 0, offsetY + maxX * scale);
+            default:
+                throw new IllegalArgumentException("rotation must be 0, 90, 180 or 270 degrees");
+        }
+    }
+
+    /**
+     * Creates a transform that fits the rotated writing area into a target rectangle at the origin, keeping its aspect
+     * ratio and centering it.
+     *
+     * @param width    width of the target
+     * @param height   height of the target
+     * @param rotation clockwise rotation in degrees, one of 0, 90, 180 or 270
+     * @return transform
+     */
+    public static SyncTransform fit(float width, float height, int rotation) {
+        boolean landscape = rotation == 0 || rotation == 180;
+        float areaWidth = landscape ? SyncCaptureReport.MAX_X : SyncCaptureReport.MAX_Y;
+        float areaHeight = landscape ? SyncCaptureReport.MAX_Y : SyncCaptureReport.MAX_X;
+        float scale = Math.min(width / areaWidth, height / areaHeight);
+        return create(scale, rotation, (width - areaWidth * scale) / 2, (height - areaHeight * scale) / 2);
+    }
+
+    public boolean isIdentity() {
+        return mScaleX == 1 && mSkewX == 0 && mTranslateX == 0 && mSkewY == 0 && mScaleY == 1 && mTranslateY == 0;
+    }
+
+    public float mapX(float x, float y) {
+        return mScaleX * x + mSkewX * y + mTranslateX;
+    }
+
+    public float mapY(float x, float y) {
+        return mSkewY * x + mScaleY * y + mTranslateY;
+    }
+
+    /**
+     * Returns the factor line widths are multiplied by, the square root of the area scale of the matrix.
+     *
+     * @return width scale
+     */
+    public float getWidthScale() {
+        return mWidthScale;
+    }
+
+    /**
+     * Transforms segments of {@link Filtering#SEGMENT_SIZE} floats (x0, y0, x1, y1, width). The source and destination
+     * may be the same array.
+     *
+     * @param src       segments in digitizer units
+     * @param srcOffset index in src of the first segment
+     * @param dst       buffer for the transformed segments
+     * @param dstOffset index in dst to write the first segment at
+     * @param count     number of segments
+     */
+    public void transformSegments(float[] src, int srcOffset, float[] dst, int dstOffset, int count) {
+        for (int i = 0; i < count; i++) {
+            int s = srcOffset + i * Filtering.SEGMENT_SIZE, d = dstOffset + i * Filtering.SEGMENT_SIZE;
+            float x0 = src[s], y0 = src[s + 1], x1 = src[s + 2], y1 = src[s + 3];
+            dst[d] = mScaleX * x0 + mSkewX * y0 + mTranslateX;
+            dst[d + 1] = mSkewY * x0 + mScaleY * y0 + mTranslateY;
+            dst[d + 2] = mScaleX * x1 + mSkewX * y1 + mTranslateX;
+            dst[d + 3] = mSkewY * x1 + mScaleY * y1 + mTranslateY;
+            dst[d + 4] = src[s + 4] * mWidthScale;
+        }
+    }
+}
@@ -0,0 +1,248 @@
+/*******************************************************************************
+ Copyright © 2014 Kent Displays, Inc.
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ******************************************************************************/
+
+package com.improvelectronics.sync.android;
+
+import java.util.Arrays;
+
+/**
+ * Software raster of a page split into square tiles of ARGB pixels. Segments are drawn with anti-aliased round ends
+ * into the tiles they touch only, which are then marked dirty, so a consumer only has to upload or blit tiles that
+ * changed and redrawing does not get slower as the page fills. Tiles that were never drawn on hold no memory. The cache
+ * is plain Java and can run headless; it can be added to a {@link SyncPipeline} as a stage, clearing itself when the
+ * erase button is pushed. It is not thread safe.
+ */
+public class TileRasterCache implements SyncPipeline.Stage {
+
+    /**
+     * Default width and height of a tile in pixels.
+     */
+    public static final int DEFAULT_TILE_SIZE = 256;
+
+    private final int mWidth;
+    private final int mHeight;
+    private final int mTileSize;
+    private final int mColumns;
+    private final int mRows;
+    private final int[][] mTiles;
+    private final boolean[] mDirty;
+    private final SyncTransform mTransform;
+    private final float[] mSegments = new float[Filtering.MAX_SEGMENTS_PER_SAMPLE * Filtering.SEGMENT_SIZE];
+    private int mInkColor = 0xFF000000;
+
+    /**
+     * Creates a cache the writing area is fitted into.
+     *
+     * @param width  width of the page in pixels
+     * @param height height of the page in pixels
+     */
+    public TileRasterCache(int width, int height) {
+        this(width, height, DEFAULT_TILE_SIZE, SyncTransform.fit(width, height, 0));
+    }
+
+    /**
+     * @param width     width of the page in pixels
+     * @param height    height of the page in pixels
+     * @param tileSize  width and height of a tile in pixels
+     * @param transform transform from digitizer coordinates to pixels
+     */
+    public TileRasterCache(int width, int height, int tileSize, SyncTransform transform) {
+        if (width <= 0 || height <= 0 || tileSize <= 0) throw new IllegalArgumentException("sizes must be positive");
+        mWidth = width;
+        mHeight = height;
+        mTileSize = tileSize;
+        mColumns = (width + tileSize - 1) / tileSize;
+        mRows = (height + tileSize - 1) / tileSize;
+        mTiles = new int[mColumns * mRows][];
+        mDirty = new boolean[mColumns * mRows];
+        mTransform = transform;
+    }
+
+    /**
+     * Sets the color of ink drawn from now on.
+     *
+     * @param color opaque ARGB color
+     */
+    public void setInkColor(int color) {
+        mInkColor = color | 0xFF000000;
+    }
+
+    public int getInkColor() {
+        return mInkColor;
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    public int getTileSize() {
+        return mTileSize;
+    }
+
+    public int getColumns() {
+        return mColumns;
+    }
+
+    public int getRows() {
+        return mRows;
+    }
+
+    /**
+     * Returns the pixels of a tile, row by row with {@link #getTileSize()} pixels per row. Pixels that were not drawn are
+     * transparent.
+     *
+     * @return pixels, or null if nothing was drawn in the tile
+     */
+    public int[] getTile(int column, int row) {
+        return mTiles[row * mColumns + column];
+    }
+
+    /**
+     * Returns true if a tile changed since it was last marked clean.
+     */
+    public boolean isTileDirty(int column, int row) {
+        return mDirty[row * mColumns + column];
+    }
+
+    public void markTileClean(int column, int row) {
+        mDirty[row * mColumns + column] = false;
+    }
+
+    public void markAllClean() {
+        Arrays.fill(mDirty, false);
+    }
+
+    /**
+     * Removes all ink, marking the tiles that held any as dirty.
+     */
+    public void clear() {
+        for (int i = 0; i < mTiles.length; i++) {
+            if (mTiles[i] != null) {
+                mTiles[i] = null;
+                mDirty[i] = true;
+            }
+        }
+    }
+
+    @Override
+    public void process(SyncPipeline.Frame frame, SyncPipeline.Output output) {
+        if (frame.segmentCount > 0) drawSegments(frame.segments, 0, frame.segmentCount);
+        if (frame.captureReport != null && frame.captureReport.hasEraseSwitchFlag()) clear();
+        output.emit(frame);
+    }
+
+    /**
+     * Draws segments of {@link Filtering#SEGMENT_SIZE} floats in digitizer units.
+     *
+     * @param segments segments to draw
+     * @param offset   index in segments of the first segment
+     * @param count    number of segments
+     */
+    public void drawSegments(float[] segments, int offset, int count) {
+        while (count > 0) {
+            int batch = Math.min(count, Filtering.MAX_SEGMENTS_PER_SAMPLE);
+            mTransform.transformSegments(segments, offset, mSegments, 0, batch);
+            for (int i = 0; i < batch; i++) {
+                int index = i * Filtering.SEGMENT_SIZE;
+                drawLine(mSegments[index], mSegments[index + 1], mSegments[index + 2], mSegments[index + 3],
+                        mSegments[index + 4] / 2);
+            }
+            offset += batch * Filtering.SEGMENT_SIZE;
+            count -= batch;
+        }
+    }
+
+    /**
+     * Draws a line with round ends in pixel coordinates.
+     */
+    public void drawLine(float x0, float y0, float x1, float y1, float radius) {
+        // Keep thin lines visible, coverage is computed for a radius of at least half a pixel.
+        radius = Math.max(radius, 0.5f);
+        int left = Math.max(0, (int) Math.floor(Math.min(x0, x1) - radius - 1));
+        int top = Math.max(0, (int) Math.floor(Math.min(y0, y1) - radius - 1));
+        int right = Math.min(mWidth - 1, (int) Math.ceil(Math.max(x0, x1) + radius + 1));
+        int bottom = Math.min(mHeight - 1, (int) Math.ceil(Math.max(y0, y1) + radius + 1));
+        if (left > right || top > bottom) return;
+
+        for (int row = top / mTileSize; row <= bottom / mTileSize; row++) {
+            for (int column = left / mTileSize; column <= right / mTileSize; column++) {
+                drawLineInTile(column, row, x0, y0, x1, y1, radius, left, top, right, bottom);
+            }
+        }
+    }
+
+    private void drawLineInTile(int column, int row, float x0, float y0, float x1, float y1, float radius, int left,
+                                int top, int right, int bottom) {
+        int tileLeft = column * mTileSize, tileTop = row * mTileSize;
+        int fromX = Math.max(left, tileLeft), toX = Math.min(right, tileLeft + mTileSize - 1);
+        int fromY = Math.max(top, tileTop), toY = Math.min(bottom, tileTop + mTileSize - 1);
+
+        float dx = x1 - x0, dy = y1 - y0;
+        float lengthSquared = dx * dx + dy * dy;
+        int tile = row * mColumns + column;
+        int[] pixels = mTiles[tile];
+
+        for (int y = fromY; y <= toY; y++) {
+            float py = y + 0.5f;
+            for (int x = fromX; x <= toX; x++) {
+                float px = x + 0.5f;
+
+                // Distance from the pixel center to the segment.
+                float t = lengthSquared == 0 ? 0 : ((px - x0) * dx + (py - y0) * dy) / lengthSquared;
+                t = Math.max(0, Math.min(1, t));
+                float cx = x0 + t * dx - px, cy = y0 + t * dy - py;
+                float coverage = radius + 0.5f - (float) Math.sqrt(cx * cx + cy * cy);
+                if (coverage <= 0) continue;
+
+                if (pixels == null) {
+                    pixels = new int[mTileSize * mTileSize];
+                    mTiles[tile] = pixels;
+                }
+                int index = (y - tileTop) * mTileSize + (x - tileLeft);
+                pixels[index] = coverage >= 1 ? mInkColor : blend(pixels[index], mInkColor, coverage);
+                mDirty[tile] = true;
+            }
+        }
+    }
+
+    /**
+     * Composites an opaque color with partial coverage over a pixel.
+     */
+    private static int blend(int dst, int src, float coverage) {
+        float dstAlpha = (dst >>> 24) / 255f;
+        float alpha = coverage + dstAlpha * (1 - coverage);
+        if (alpha <= 0) return 0;
+        int r = channel(dst >> 16, src >> 16, coverage, dstAlpha, alpha);
+        int g = channel(dst >> 8, src >> 8, coverage, dstAlpha, alpha);
+        int b = channel(dst, src, coverage, dstAlpha, alpha);
+        return Math.round(alpha * 255) << 24 | r << 16 | g << 8 | b;
+    }
+
+    private static int channel(int dst, int src, float coverage, float dstAlpha, float alpha) {
+        float value = ((src & 0xFF) * coverage + (dst & 0xFF) * dstAlpha * (1 - coverage)) / alpha;
+        return Math.min(255, Math.round(value));
+    }
+}
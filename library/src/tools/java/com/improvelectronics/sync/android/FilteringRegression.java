@@ -0,0 +1,420 @@
+/*******************************************************************************
+ Copyright © 2014 Kent Displays, Inc.
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ******************************************************************************/
+
+package com.improvelectronics.sync.android;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Regression harness for {@link Filtering} over a corpus of capture traces. Each trace is stored as a text file of packed
+ * samples (x, y, pressure and flags per line, <code>name.trace</code>) next to the segments it is expected to produce
+ * (x0, y0, x1, y1 and width per line, <code>name.golden</code>). Traces named <code>synthetic_*</code> were generated to
+ * cover edge cases; recorded traces are imported from the page journal of a device (see {@link SyncJournal}).
+ * <p/>
+ * The strokes of every trace are also encoded with {@link StrokeCodec} and decoded again, checking that the vertices
+ * come back within the quantization step and reporting how much smaller the encoding is than the raw float vertices.
+ * Finally the whole corpus is filtered with {@link ParallelFiltering}, which has to write exactly the segments of a
+ * single {@link Filtering}.
+ * <p/>
+ * Run off device with the Gradle tasks: <code>filteringRegression</code> checks every trace and reports its throughput
+ * and is part of <code>check</code>, <code>generateFilteringGolden</code> rewrites only the golden output after an
+ * intentional change to the filter, and <code>importFilteringTrace -Pjournal=page.journal -PtraceName=name</code> adds a
+ * journal pulled from a device to the corpus.
+ */
+public class FilteringRegression {
+
+    // Largest difference allowed between a golden and a filtered coordinate, in digitizer units.
+    private static final float POSITION_TOLERANCE = 0.5f;
+
+    // Largest difference allowed between a golden and a filtered line width, in digitizer units.
+    private static final float WIDTH_TOLERANCE = 0.01f;
+
+    // Number of passes over a trace used for timing.
+    private static final int TIMING_PASSES = 50;
+
+    // Copies of the corpus joined into one session for the parallel check, enough to be split into several tasks.
+    private static final int PARALLEL_COPIES = 8;
+
+    private static final String TRACE_EXTENSION = ".trace";
+    private static final String GOLDEN_EXTENSION = ".golden";
+
+    /**
+     * Result of checking a single trace.
+     */
+    public static class Result {
+        public final String name;
+        public final boolean passed;
+        public final String failure;
+        public final float reportsPerSecond;
+
+        /**
+         * Size of the vertices of the strokes as floats and size of the strokes encoded with {@link StrokeCodec}, in
+         * bytes.
+         */
+        public final int rawSize;
+        public final int encodedSize;
+
+        Result(String name, String failure, float reportsPerSecond, int rawSize, int encodedSize) {
+            this.name = name;
+            this.passed = failure == null;
+            this.failure = failure;
+            this.reportsPerSecond = reportsPerSecond;
+            this.rawSize = rawSize;
+            this.encodedSize = encodedSize;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-28s %s %12.0f reports/s %8d bytes encoded, %.1fx smaller", name,
+                    passed ? "PASS" : "FAIL: " + failure, reportsPerSecond, encodedSize, ratio(rawSize, encodedSize));
+        }
+    }
+
+    /**
+     * Filters a trace with a new {@link Filtering} and compares the segments with the golden output.
+     *
+     * @param name     name of the trace used in the result
+     * @param samples  packed samples of the trace
+     * @param golden   expected segment records
+     * @param config   parameters of the filter
+     * @return whether the segments matched and the throughput of the filter
+     */
+    public static Result check(String name, int[] samples, float[] golden, FilterConfig config) {
+        int count = samples.length / Filtering.SAMPLE_SIZE;
+        float[] segments = new float[count * Filtering.MAX_SEGMENTS_PER_SAMPLE * Filtering.SEGMENT_SIZE];
+        int written = new Filtering(config).filterSamples(samples, 0, count, segments, 0);
+
+        long start = System.nanoTime();
+        for (int pass = 0; pass < TIMING_PASSES; pass++) {
+            new Filtering(config).filterSamples(samples, 0, count, segments, 0);
+        }
+        float reportsPerSecond = (float) ((double) TIMING_PASSES * count * 1e9 / (System.nanoTime() - start));
+
+        List<SyncStroke> strokes = buildStrokes(samples);
+        int rawSize = 0;
+        for (SyncStroke stroke : strokes) rawSize += stroke.getVertexCount() * SyncStroke.VERTEX_SIZE * 4;
+        ByteBuffer encoded = encode(strokes);
+
+        String failure = compare(segments, written, golden);
+        if (failure == null) failure = compareDecoded(strokes, encoded);
+        return new Result(name, failure, reportsPerSecond, rawSize, encoded.position());
+    }
+
+    // Strokes drawn by the samples, one for every pen down to pen up.
+    private static List<SyncStroke> buildStrokes(int[] samples) {
+        final List<SyncStroke> strokes = new ArrayList<SyncStroke>();
+        final StrokeBuilder builder = new StrokeBuilder(new StrokeBuilder.StrokeListener() {
+            @Override
+            public void onStrokeUpdated(SyncStroke stroke, int firstVertexIndex) {
+            }
+
+            @Override
+            public void onStrokeCompleted(SyncStroke stroke) {
+                strokes.add(stroke);
+            }
+        });
+        SampleReplay replay = new SampleReplay(new SampleReplay.Target() {
+            @Override
+            public void onSegments(float[] segments, int offset, int count) {
+                builder.appendSegments(segments, offset, count);
+            }
+
+            @Override
+            public void onPenUp() {
+                builder.endStroke();
+            }
+        });
+        try {
+            replay.replay(samples, 0, samples.length / Filtering.SAMPLE_SIZE);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        builder.endStroke();
+        return strokes;
+    }
+
+    private static ByteBuffer encode(List<SyncStroke> strokes) {
+        int size = 0;
+        for (SyncStroke stroke : strokes) size += StrokeCodec.maxEncodedSize(stroke);
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        StrokeCodec.Encoder encoder = new StrokeCodec.Encoder();
+        for (SyncStroke stroke : strokes) encoder.encode(stroke, buffer);
+        return buffer;
+    }
+
+    private static String compareDecoded(List<SyncStroke> strokes, ByteBuffer encoded) {
+        ByteBuffer in = ByteBuffer.wrap(encoded.array(), 0, encoded.position());
+        StrokeCodec.Decoder decoder = new StrokeCodec.Decoder();
+        for (int i = 0; i < strokes.size(); i++) {
+            SyncStroke stroke = strokes.get(i), decoded = decoder.decode(in);
+            if (decoded == null || decoded.getVertexCount() != stroke.getVertexCount()) {
+                return "stroke " + i + " did not decode to its vertices";
+            }
+            for (int v = 0; v < stroke.getVertexCount(); v++) {
+                if (Math.abs(decoded.getX(v) - stroke.getX(v)) > 0.5f / StrokeCodec.POSITION_SCALE
+                        || Math.abs(decoded.getY(v) - stroke.getY(v)) > 0.5f / StrokeCodec.POSITION_SCALE
+                        || Math.abs(decoded.getWidth(v) - stroke.getWidth(v)) > 0.5f / StrokeCodec.WIDTH_SCALE) {
+                    return "vertex " + v + " of stroke " + i + " moved by more than the quantization step";
+                }
+            }
+        }
+        return in.hasRemaining() ? "encoding has " + in.remaining() + " bytes past the last stroke" : null;
+    }
+
+    private static float ratio(int rawSize, int encodedSize) {
+        return encodedSize == 0 ? 0 : (float) rawSize / encodedSize;
+    }
+
+    private static String compare(float[] segments, int count, float[] golden) {
+        if (count * Filtering.SEGMENT_SIZE != golden.length) {
+            return "expected " + golden.length / Filtering.SEGMENT_SIZE + " segments but got " + count;
+        }
+
+        for (int i = 0; i < golden.length; i++) {
+            boolean width = i % Filtering.SEGMENT_SIZE == 4;
+            float tolerance = width ? WIDTH_TOLERANCE : POSITION_TOLERANCE;
+            if (Math.abs(segments[i] - golden[i]) > tolerance) {
+                return String.format("segment %d %s is %f, expected %f", i / Filtering.SEGMENT_SIZE, width ? "width" : "coordinate",
+                        segments[i], golden[i]);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Checks every trace of a corpus directory against its golden output.
+     *
+     * @param directory corpus directory
+     * @param config    parameters of the filter
+     * @return one result per trace
+     * @throws IOException if the corpus could not be read
+     */
+    public static Result[] checkCorpus(File directory, FilterConfig config) throws IOException {
+        File[] traces = listTraces(directory);
+        Result[] results = new Result[traces.length];
+        for (int i = 0; i < traces.length; i++) {
+            String name = traces[i].getName().substring(0, traces[i].getName().length() - TRACE_EXTENSION.length());
+            results[i] = check(name, toInts(read(traces[i], Filtering.SAMPLE_SIZE)), read(new File(directory, name + GOLDEN_EXTENSION),
+                    Filtering.SEGMENT_SIZE), config);
+        }
+        return results;
+    }
+
+    /**
+     * Filters the traces of a corpus, joined into one session, with {@link ParallelFiltering} and with a single
+     * {@link Filtering}, which must write bit-identical segments.
+     *
+     * @param directory corpus directory
+     * @param config    parameters of the filter
+     * @return description of the first difference, or null if there is none
+     * @throws IOException          if the corpus could not be read
+     * @throws InterruptedException if interrupted while waiting for the parallel tasks
+     */
+    public static String checkParallel(File directory, FilterConfig config) throws IOException, InterruptedException {
+        File[] traces = listTraces(directory);
+        int[][] corpus = new int[traces.length][];
+        int length = 0;
+        for (int i = 0; i < traces.length; i++) {
+            corpus[i] = toInts(read(traces[i], Filtering.SAMPLE_SIZE));
+            length += corpus[i].length;
+        }
+        int[] samples = new int[length * PARALLEL_COPIES];
+        int position = 0;
+        for (int copy = 0; copy < PARALLEL_COPIES; copy++) {
+            for (int[] trace : corpus) {
+                System.arraycopy(trace, 0, samples, position, trace.length);
+                position += trace.length;
+            }
+        }
+
+        int count = samples.length / Filtering.SAMPLE_SIZE;
+        float[] sequential = new float[count * Filtering.MAX_SEGMENTS_PER_SAMPLE * Filtering.SEGMENT_SIZE];
+        float[] parallel = new float[sequential.length];
+        int sequentialCount = new Filtering(config).filterSamples(samples, 0, count, sequential, 0);
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors()));
+        int parallelCount;
+        try {
+            parallelCount = new ParallelFiltering(executor, config).filterSamples(samples, 0, count, parallel, 0);
+        } finally {
+            executor.shutdown();
+        }
+
+        if (parallelCount != sequentialCount) {
+            return "expected " + sequentialCount + " segments but got " + parallelCount;
+        }
+        for (int i = 0; i < sequentialCount * Filtering.SEGMENT_SIZE; i++) {
+            if (Float.floatToIntBits(parallel[i]) != Float.floatToIntBits(sequential[i])) {
+                return String.format("segment %d value %d is %f, expected %f", i / Filtering.SEGMENT_SIZE,
+                        i % Filtering.SEGMENT_SIZE, parallel[i], sequential[i]);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Writes the golden output of the current filter for every trace in the directory. Traces are never changed, so a
+     * regeneration only moves the expected output, which should be reviewed like any other change.
+     *
+     * @param directory corpus directory
+     * @param config    parameters of the filter
+     * @throws IOException if the golden output could not be written
+     */
+    public static void generateGolden(File directory, FilterConfig config) throws IOException {
+        for (File trace : listTraces(directory)) {
+            int[] samples = toInts(read(trace, Filtering.SAMPLE_SIZE));
+            String name = trace.getName().substring(0, trace.getName().length() - TRACE_EXTENSION.length());
+            writeGolden(new File(directory, name + GOLDEN_EXTENSION), samples, config);
+        }
+    }
+
+    /**
+     * Adds the samples of a page journal pulled from a device to the corpus as a recorded trace, along with its golden
+     * output.
+     *
+     * @param journal   journal file
+     * @param directory corpus directory
+     * @param name      name of the new trace
+     * @param config    parameters of the filter
+     * @throws IOException if the journal could not be read or the trace could not be written
+     */
+    public static void importJournal(File journal, File directory, String name, FilterConfig config) throws IOException {
+        File trace = new File(directory, name + TRACE_EXTENSION);
+        if (trace.exists()) throw new IOException(trace + " already exists");
+
+        SyncJournal syncJournal = new SyncJournal(journal, (int) journal.length(), SyncJournal.DEFAULT_FORCE_INTERVAL_MS);
+        int[] samples;
+        try {
+            samples = syncJournal.readSamples();
+        } finally {
+            syncJournal.close();
+        }
+
+        PrintWriter writer = new PrintWriter(new FileWriter(trace));
+        try {
+            writer.println("# Recorded trace, imported from the page journal " + journal.getName() + ".");
+            writer.println("# x y pressure flags");
+            for (int i = 0; i < samples.length; i += Filtering.SAMPLE_SIZE) {
+                writer.println(samples[i] + " " + samples[i + 1] + " " + samples[i + 2] + " " + samples[i + 3]);
+            }
+        } finally {
+            writer.close();
+        }
+        writeGolden(new File(directory, name + GOLDEN_EXTENSION), samples, config);
+    }
+
+    private static void writeGolden(File golden, int[] samples, FilterConfig config) throws IOException {
+        int count = samples.length / Filtering.SAMPLE_SIZE;
+        float[] segments = new float[count * Filtering.MAX_SEGMENTS_PER_SAMPLE * Filtering.SEGMENT_SIZE];
+        int written = new Filtering(config).filterSamples(samples, 0, count, segments, 0);
+
+        PrintWriter writer = new PrintWriter(new FileWriter(golden));
+        try {
+            for (int i = 0; i < written * Filtering.SEGMENT_SIZE; i += Filtering.SEGMENT_SIZE) {
+                writer.println((int) segments[i] + " " + (int) segments[i + 1] + " " + (int) segments[i + 2] + " "
+                        + (int) segments[i + 3] + " " + segments[i + 4]);
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static File[] listTraces(File directory) throws IOException {
+        File[] files = directory.listFiles();
+        if (files == null) throw new IOException("could not list " + directory);
+
+        int count = 0;
+        for (File file : files) {
+            if (file.getName().endsWith(TRACE_EXTENSION)) files[count++] = file;
+        }
+        File[] traces = Arrays.copyOf(files, count);
+        Arrays.sort(traces);
+        return traces;
+    }
+
+    private static float[] read(File file, int valuesPerLine) throws IOException {
+        float[] values = new float[1024];
+        int count = 0;
+        BufferedReader reader = new BufferedReader(new FileReader(file));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.length() == 0 || line.startsWith("#")) continue;
+
+                String[] fields = line.split("\\s+");
+                if (fields.length != valuesPerLine) throw new IOException("malformed line in " + file + ": " + line);
+                if (count + valuesPerLine > values.length) values = Arrays.copyOf(values, values.length * 2);
+                for (String field : fields) values[count++] = Float.parseFloat(field);
+            }
+        } finally {
+            reader.close();
+        }
+        return Arrays.copyOf(values, count);
+    }
+
+    private static int[] toInts(float[] values) {
+        int[] ints = new int[values.length];
+        for (int i = 0; i < values.length; i++) ints[i] = (int) values[i];
+        return ints;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        boolean generate = args.length == 2 && args[0].equals("--generate");
+        boolean importing = args.length == 4 && args[0].equals("--import");
+        if (args.length != 1 && !generate && !importing) {
+            System.err.println("usage: FilteringRegression [--generate | --import <journal> <name>] <corpus directory>");
+            System.exit(2);
+        }
+
+        File directory = new File(args[args.length - 1]);
+        if (generate) generateGolden(directory, FilterConfig.DEFAULT);
+        if (importing) importJournal(new File(args[1]), directory, args[2], FilterConfig.DEFAULT);
+
+        boolean passed = true;
+        int rawSize = 0, encodedSize = 0;
+        for (Result result : checkCorpus(directory, FilterConfig.DEFAULT)) {
+            System.out.println(result);
+            passed &= result.passed;
+            rawSize += result.rawSize;
+            encodedSize += result.encodedSize;
+        }
+        System.out.println(String.format("strokes of the corpus: %d bytes of float vertices, %d bytes encoded, "
+                + "%.1fx smaller", rawSize, encodedSize, ratio(rawSize, encodedSize)));
+
+        String failure = checkParallel(directory, FilterConfig.DEFAULT);
+        System.out.println(String.format("parallel filtering of %d copies of the corpus: %s", PARALLEL_COPIES,
+                failure == null ? "PASS" : "FAIL: " + failure));
+        passed &= failure == null;
+        if (!passed) System.exit(1);
+    }
+}
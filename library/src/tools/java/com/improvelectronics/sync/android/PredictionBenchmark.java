@@ -0,0 +1,141 @@
+/*******************************************************************************
+ Copyright © 2014 Kent Displays, Inc.
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ******************************************************************************/
+
+package com.improvelectronics.sync.android;
+
+/**
+ * Replays recorded packed samples (see {@link Filtering#SAMPLE_SIZE}) through {@link Filtering} and compares every
+ * predicted pen position with the raw digitizer sample that arrived that many samples later. The error of drawing no
+ * prediction, the last filtered position against the same sample, is reported next to it. Run off device with the
+ * <code>benchmarkPrediction</code> Gradle task, which reports the built in smoothing filters against a synthetic
+ * handwriting trace.
+ */
+public class PredictionBenchmark {
+
+    // Flags of a sample with the stylus touching the surface.
+    private static final int CONTACT = 0x05;
+
+    /**
+     * Prediction error for one extrapolation distance.
+     */
+    public static class Result {
+        public final int samplesAhead;
+
+        /**
+         * Time the prediction extrapolates, assuming samples arrive at exactly {@link FilterConfig#getMsPerSample()}.
+         * This is not a measurement of display latency.
+         */
+        public final float nominalMillisAhead;
+        public final float meanError;
+        public final float maxError;
+        public final float baselineMeanError;
+        public final int predictions;
+
+        Result(int samplesAhead, float nominalMillisAhead, float meanError, float maxError, float baselineMeanError,
+               int predictions) {
+            this.samplesAhead = samplesAhead;
+            this.nominalMillisAhead = nominalMillisAhead;
+            this.meanError = meanError;
+            this.maxError = maxError;
+            this.baselineMeanError = baselineMeanError;
+            this.predictions = predictions;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d ahead (nominally %.1f ms): mean error %.1f units, max error %.1f units, "
+                            + "without prediction %.1f units over %d predictions", samplesAhead, nominalMillisAhead, meanError,
+                    maxError, baselineMeanError, predictions);
+        }
+    }
+
+    /**
+     * Measures prediction error for every extrapolation distance from 1 to {@link Filtering#MAX_PREDICTION_SAMPLES}.
+     *
+     * @param config    configuration providing the sample rate of the recording
+     * @param filtering filter to replay the recording through, should not be in the middle of a trace
+     * @param samples   packed samples
+     * @param offset    index in samples of the first sample
+     * @param count     number of samples
+     * @return one result per extrapolation distance
+     */
+    public static Result[] measure(FilterConfig config, Filtering filtering, int[] samples, int offset, int count) {
+        Result[] results = new Result[Filtering.MAX_PREDICTION_SAMPLES];
+        for (int ahead = 1; ahead <= Filtering.MAX_PREDICTION_SAMPLES; ahead++) {
+            filtering.reset();
+            results[ahead - 1] = measure(config, filtering, samples, offset, count, ahead);
+        }
+        filtering.reset();
+        return results;
+    }
+
+    private static Result measure(FilterConfig config, Filtering filtering, int[] samples, int offset, int count,
+                                  int ahead) {
+        float[] segments = new float[Filtering.MAX_SEGMENTS_PER_SAMPLE * Filtering.SEGMENT_SIZE];
+
+        double errorSum = 0, baselineSum = 0;
+        float maxError = 0;
+        int predictions = 0;
+
+        for (int i = 0; i < count; i++) {
+            int index = offset + i * Filtering.SAMPLE_SIZE;
+            filtering.filterSample(samples[index], samples[index + 1], samples[index + 2], samples[index + 3], segments, 0);
+            if (i + ahead >= count || filtering.predictSegment(ahead, segments, 0) == 0) continue;
+
+            // Only score predictions whose target sample still belongs to the same pen down.
+            boolean contact = true;
+            for (int j = 1; j <= ahead && contact; j++) {
+                contact = (samples[index + j * Filtering.SAMPLE_SIZE + 3] & CONTACT) == CONTACT;
+            }
+            if (!contact) continue;
+
+            int target = index + ahead * Filtering.SAMPLE_SIZE;
+            float error = distance(segments[2], segments[3], samples[target], samples[target + 1]);
+            errorSum += error;
+            if (error > maxError) maxError = error;
+            baselineSum += distance(filtering.getSmoothingFilter().getX(), filtering.getSmoothingFilter().getY(),
+                    samples[target], samples[target + 1]);
+            predictions++;
+        }
+
+        return new Result(ahead, ahead * config.getMsPerSample(), predictions > 0 ? (float) (errorSum / predictions) : 0,
+                maxError, predictions > 0 ? (float) (baselineSum / predictions) : 0, predictions);
+    }
+
+    private static float distance(float x0, float y0, float x1, float y1) {
+        float dx = x1 - x0, dy = y1 - y0;
+        return (float) Math.sqrt(dx * dx + dy * dy);
+    }
+
+    public static void main(String[] args) {
+        FilterConfig config = FilterConfig.DEFAULT;
+        int[] trace = SmoothingFilterBenchmark.createSyntheticTrace(config, 20000);
+        SmoothingFilter[] filters = {new PDSmoothingFilter(config.getProportionalGain(), config.getDerivativeGain()),
+                new OneEuroSmoothingFilter(config), new KalmanSmoothingFilter()};
+        for (SmoothingFilter filter : filters) {
+            System.out.println(filter.getClass().getSimpleName() + ":");
+            for (Result result : measure(config, new Filtering(config, filter), trace, 0, 20000)) {
+                System.out.println("  " + result);
+            }
+        }
+    }
+}
@@ -0,0 +1,152 @@
+/*******************************************************************************
+ Copyright © 2014 Kent Displays, Inc.
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ******************************************************************************/
+
+package com.improvelectronics.sync.android;
+
+import java.util.Random;
+
+/**
+ * Measures the per sample cost and the lag of a {@link SmoothingFilter} over a trace of packed samples (see
+ * {@link Filtering#SAMPLE_SIZE}), so filters can be compared on recorded data. Run off device with the
+ * <code>benchmarkSmoothingFilters</code> Gradle task, which reports each built in filter against a synthetic handwriting
+ * trace.
+ */
+public class SmoothingFilterBenchmark {
+
+    // Largest lag in samples that is searched for.
+    private static final int MAX_LAG = 32;
+
+    // Number of passes over the trace used for timing.
+    private static final int TIMING_PASSES = 20;
+
+    /**
+     * Result of measuring a smoothing filter.
+     */
+    public static class Result {
+        public final float nanosPerSample;
+        public final int lagSamples;
+        public final float lagMillis;
+        public final float meanError;
+
+        Result(float nanosPerSample, int lagSamples, float lagMillis, float meanError) {
+            this.nanosPerSample = nanosPerSample;
+            this.lagSamples = lagSamples;
+            this.lagMillis = lagMillis;
+            this.meanError = meanError;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%.1f ns/sample, lag %d samples (%.1f ms), mean error %.1f units", nanosPerSample, lagSamples,
+                    lagMillis, meanError);
+        }
+    }
+
+    /**
+     * Runs a smoothing filter over a trace. The trace is treated as a single pen down, flags are ignored.
+     *
+     * @param config  configuration providing the sample rate of the trace
+     * @param filter  filter to measure
+     * @param samples packed samples
+     * @param offset  index in samples of the first sample
+     * @param count   number of samples, at least two
+     * @return cost and lag of the filter
+     */
+    public static Result measure(FilterConfig config, SmoothingFilter filter, int[] samples, int offset, int count) {
+        if (count < 2) throw new IllegalArgumentException("trace needs at least two samples");
+
+        int[] filtered = new int[count * 2];
+        run(filter, samples, offset, count, filtered);
+
+        // Time repeated passes after the first one has warmed up the filter.
+        long start = System.nanoTime();
+        for (int pass = 0; pass < TIMING_PASSES; pass++) {
+            run(filter, samples, offset, count, filtered);
+        }
+        float nanosPerSample = (float) (System.nanoTime() - start) / (TIMING_PASSES * count);
+
+        // The lag is the delay of the raw trace that best matches the filtered one.
+        int bestLag = 0;
+        double bestError = Double.MAX_VALUE;
+        for (int lag = 0; lag <= MAX_LAG && lag < count; lag++) {
+            double error = meanError(samples, offset, count, filtered, lag);
+            if (error < bestError) {
+                bestError = error;
+                bestLag = lag;
+            }
+        }
+
+        return new Result(nanosPerSample, bestLag, bestLag * config.getMsPerSample(), (float) meanError(samples, offset, count, filtered, 0));
+    }
+
+    private static void run(SmoothingFilter filter, int[] samples, int offset, int count, int[] filtered) {
+        filter.reset(samples[offset], samples[offset + 1], samples[offset + 2]);
+        for (int i = 0; i < count; i++) {
+            int index = offset + i * Filtering.SAMPLE_SIZE;
+            filter.update(samples[index], samples[index + 1], samples[index + 2]);
+            filtered[i * 2] = filter.getX();
+            filtered[i * 2 + 1] = filter.getY();
+        }
+    }
+
+    private static double meanError(int[] samples, int offset, int count, int[] filtered, int lag) {
+        double sum = 0;
+        for (int i = lag; i < count; i++) {
+            int index = offset + (i - lag) * Filtering.SAMPLE_SIZE;
+            double dx = filtered[i * 2] - samples[index];
+            double dy = filtered[i * 2 + 1] - samples[index + 1];
+            sum += Math.sqrt(dx * dx + dy * dy);
+        }
+        return sum / (count - lag);
+    }
+
+    /**
+     * Creates a synthetic trace of looping cursive strokes with digitizer noise.
+     *
+     * @param config configuration providing the sample rate of the trace
+     * @param count  number of samples
+     * @return packed samples
+     */
+    public static int[] createSyntheticTrace(FilterConfig config, int count) {
+        int[] samples = new int[count * Filtering.SAMPLE_SIZE];
+        Random random = new Random(0);
+        for (int i = 0; i < count; i++) {
+            double t = i * config.getMsPerSample() / 1000.0;
+            int index = i * Filtering.SAMPLE_SIZE;
+            samples[index] = (int) (2000 + 1500 * t + 300 * Math.cos(2 * Math.PI * 3 * t)) + random.nextInt(7) - 3;
+            samples[index + 1] = (int) (6000 + 400 * Math.sin(2 * Math.PI * 3 * t)) + random.nextInt(7) - 3;
+            samples[index + 2] = 300 + (int) (100 * Math.sin(2 * Math.PI * t));
+            samples[index + 3] = 0x05;
+        }
+        return samples;
+    }
+
+    public static void main(String[] args) {
+        FilterConfig config = FilterConfig.DEFAULT;
+        int[] trace = createSyntheticTrace(config, 20000);
+        SmoothingFilter[] filters = {new PDSmoothingFilter(config.getProportionalGain(), config.getDerivativeGain()),
+                new OneEuroSmoothingFilter(config), new KalmanSmoothingFilter()};
+        for (SmoothingFilter filter : filters) {
+            System.out.println(filter.getClass().getSimpleName() + ": " + measure(config, filter, trace, 0, 20000));
+        }
+    }
+}
@@ -0,0 +1,125 @@
+/*******************************************************************************
+ Copyright © 2014 Kent Displays, Inc.
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ******************************************************************************/
+
+
+package com.improvelectronics.sync.android;
+
+/**
+ * Checks the geometry of {@link SyncFloatPath} on a plain JVM: points, widths and contours added with
+ * {@link SyncFloatPath#moveTo(float, float, float)}, {@link SyncFloatPath#lineTo(float, float, float)} and
+ * {@link SyncFloatPath#addSegment(float, float, float, float, float)}, growth past the initial capacity, copies of
+ * strokes and {@link SyncFloatPath#reset()}. The Android graphics path is not built. Run off device with the
+ * <code>floatPathCheck</code> Gradle task, which is part of <code>check</code>.
+ */
+public class SyncFloatPathCheck {
+
+    /**
+     * Runs every check.
+     *
+     * @return description of the first problem found, or null if there is none
+     */
+    public static String check() {
+        String failure = checkContours();
+        if (failure == null) failure = checkGrowth();
+        if (failure == null) failure = checkSegments();
+        if (failure == null) failure = checkStroke();
+        if (failure == null) failure = checkReset();
+        return failure;
+    }
+
+    private static String checkContours() {
+        SyncFloatPath path = new SyncFloatPath();
+        path.setStrokeWidth(2);
+        path.lineTo(1, 1);
+        path.moveTo(5, 5);
+        path.lineTo(6, 7);
+        if (path.hasWidths()) return "path without widths reports widths";
+        if (path.getPointCount() != 4 || path.getContourCount() != 2) return "lineTo did not start a contour at the origin";
+        if (path.getX(0) != 0 || path.getY(0) != 0 || path.getX(3) != 6 || path.getY(3) != 7) return "points moved";
+        if (path.getContourStart(1) != 2) return "second contour starts at " + path.getContourStart(1);
+        if (path.getWidth(3) != 2) return "width of a path without widths is not its stroke width";
+        if (path.getSegmentCount() != 2) return "expected 2 segments but got " + path.getSegmentCount();
+        return null;
+    }
+
+    private static String checkGrowth() {
+        SyncFloatPath path = new SyncFloatPath(true);
+        for (int i = 0; i < 1000; i++) {
+            if (i % 100 == 0) path.moveTo(i, -i, i / 10f);
+            else path.lineTo(i, -i, i / 10f);
+        }
+        if (path.getPointCount() != 1000 || path.getContourCount() != 10) return "points or contours lost while growing";
+        for (int i = 0; i < 1000; i++) {
+            if (path.getX(i) != i || path.getY(i) != -i || path.getWidth(i) != i / 10f) return "point " + i + " changed";
+        }
+        for (int i = 0; i < 10; i++) {
+            if (path.getContourStart(i) != i * 100) return "contour " + i + " starts at " + path.getContourStart(i);
+        }
+        return null;
+    }
+
+    private static String checkSegments() {
+        SyncFloatPath path = new SyncFloatPath(true);
+        path.addSegment(0, 0, 10, 0, 1);
+        path.addSegment(10, 0, 10, 10, 2);
+        path.addSegment(10, 10, 0, 10, 3);
+        path.addSegment(50, 50, 60, 60, 4);
+        if (path.getContourCount() != 2) return "consecutive segments did not share a contour";
+        if (path.getPointCount() != 6 || path.getSegmentCount() != 4) return "segments did not share their points";
+        if (path.getWidth(1) != 1 || path.getWidth(3) != 3 || path.getWidth(5) != 4) return "segment width is not kept at the end point";
+        if (path.getContourStart(1) != 4 || path.getX(4) != 50 || path.getY(5) != 60) return "disjoint segment did not start a contour";
+        return null;
+    }
+
+    private static String checkStroke() {
+        SyncStroke stroke = new SyncStroke(1, 0);
+        for (int i = 0; i < 40; i++) stroke.addVertex(i * 2, i * 3, 1 + i % 4);
+        stroke.complete(1);
+        SyncFloatPath path = new SyncFloatPath(stroke);
+        if (!path.hasWidths() || path.getPointCount() != 40 || path.getContourCount() != 1) return "stroke copy has the wrong shape";
+        for (int i = 0; i < 40; i++) {
+            if (path.getX(i) != i * 2 || path.getY(i) != i * 3 || path.getWidth(i) != 1 + i % 4) return "stroke vertex " + i + " changed";
+        }
+        path.lineTo(100, 100, 5);
+        if (path.getPointCount() != 41 || path.getWidth(40) != 5) return "stroke copy could not be extended";
+        return null;
+    }
+
+    private static String checkReset() {
+        SyncFloatPath path = new SyncFloatPath(true);
+        path.addSegment(0, 0, 1, 1, 1);
+        path.reset();
+        if (path.getPointCount() != 0 || path.getContourCount() != 0 || path.getSegmentCount() != 0) return "reset kept points";
+        path.addSegment(1, 1, 2, 2, 1);
+        if (path.getContourCount() != 1 || path.getX(0) != 1) return "segment after reset joined a removed point";
+        return null;
+    }
+
+    public static void main(String[] args) {
+        String failure = check();
+        if (failure != null) {
+            System.err.println("FAIL: " + failure);
+            System.exit(1);
+        }
+        System.out.println("PASS");
+    }
+}
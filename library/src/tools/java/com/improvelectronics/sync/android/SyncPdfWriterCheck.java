@@ -0,0 +1,98 @@
+/*******************************************************************************
+ Copyright © 2014 Kent Displays, Inc.
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ******************************************************************************/
+
+package com.improvelectronics.sync.android;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Checks the structure of documents written by {@link SyncPdfWriter}: every object listed in the cross reference table
+ * starts at its offset, every content stream has the length it declares, and every page sets its own line width since
+ * graphics state does not carry over between pages. Run off device with the <code>pdfWriterCheck</code> Gradle task,
+ * which is part of <code>check</code>.
+ */
+public class SyncPdfWriterCheck {
+
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+
+    /**
+     * Checks a document.
+     *
+     * @param pdf bytes of the document
+     * @return description of the first problem found, or null if there is none
+     */
+    public static String check(byte[] pdf) {
+        String text = new String(pdf, ASCII);
+
+        // Cross reference table.
+        int xref = text.lastIndexOf("\nxref\n");
+        if (xref < 0) return "no cross reference table";
+        Matcher entries = Pattern.compile("(\\d{10}) 00000 n").matcher(text.substring(xref));
+        int object = 1;
+        while (entries.find()) {
+            int offset = Integer.parseInt(entries.group(1));
+            if (!text.startsWith(object + " 0 obj", offset)) return "object " + object + " is not at offset " + offset;
+            object++;
+        }
+
+        // Content streams.
+        Matcher streams = Pattern.compile("/Length (\\d+) 0 R >>\nstream\n").matcher(text);
+        int page = 0;
+        while (streams.find()) {
+            page++;
+            Matcher length = Pattern.compile("\n" + streams.group(1) + " 0 obj\n(\\d+)\n").matcher(text);
+            if (!length.find()) return "length of page " + page + " is missing";
+            int end = streams.end() + Integer.parseInt(length.group(1));
+            if (!text.startsWith("endstream", end)) return "length of page " + page + " does not end its stream";
+
+            String content = text.substring(streams.end(), end);
+            int firstPath = content.indexOf(" m ");
+            if (firstPath >= 0 && !content.substring(0, firstPath).contains(" w\n")) {
+                return "page " + page + " draws before setting a line width";
+            }
+        }
+        if (page == 0) return "no pages";
+        return null;
+    }
+
+    public static void main(String[] args) throws IOException {
+        // Two pages drawn with the same width, the second page must set it again.
+        float[] segments = {1000, 1000, 2000, 1500, 170, 2000, 1500, 3000, 1000, 170};
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        SyncPdfWriter writer = new SyncPdfWriter(out);
+        writer.addSegments(segments, 0, 2);
+        writer.startPage();
+        writer.addSegments(segments, 0, 2);
+        writer.close();
+
+        String failure = writer.getPageCount() != 2 ? "expected 2 pages" : check(out.toByteArray());
+        if (failure != null) {
+            System.err.println("FAIL: " + failure);
+            System.exit(1);
+        }
+        System.out.println("PASS");
+    }
+}